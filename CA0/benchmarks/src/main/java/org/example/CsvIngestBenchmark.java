@@ -0,0 +1,83 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading a synthetic CSV of {@code rows} rows through each ingest path. {@link #openCsv}
+ * is the OpenCSV loop that {@code Main} started from.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvIngestBenchmark {
+    @Param({"100000"})
+    public long rows;
+
+    @Param({"1000"})
+    public int players;
+
+    @Param({"100"})
+    public int yearSpan;
+
+    private Path csvFile;
+    private Path snapshotFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        csvFile = Files.createTempFile("memberships", ".csv");
+        snapshotFile = Files.createTempFile("memberships", ".snap");
+        SyntheticCsv.write(csvFile, rows, players, 50, yearSpan, 42);
+        MembershipSnapshot.write(MembershipIndex.load(csvFile.toString()), snapshotFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(csvFile);
+        Files.deleteIfExists(snapshotFile);
+    }
+
+    @Benchmark
+    public MembershipIndex openCsv() throws IOException {
+        return MembershipIndex.load(csvFile.toString());
+    }
+
+    @Benchmark
+    public MembershipIndex mapped() throws IOException {
+        return MappedCsvParser.load(csvFile.toString());
+    }
+
+    @Benchmark
+    public MembershipIndex parallel() throws IOException {
+        return ParallelCsvIngest.load(csvFile.toString(), Runtime.getRuntime().availableProcessors());
+    }
+
+    @Benchmark
+    public MembershipStore compactStore() throws IOException {
+        return MembershipStore.load(csvFile.toString());
+    }
+
+    @Benchmark
+    public int snapshot() throws IOException {
+        return MembershipSnapshot.open(snapshotFile).getRowCount();
+    }
+}
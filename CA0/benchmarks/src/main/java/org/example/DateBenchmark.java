@@ -0,0 +1,97 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Date} arithmetic over dates spread across {@code yearSpan} years from 1300.
+ * {@link #legacyDifferenceInDays} is the year-by-year loop {@code differenceInDays} used to run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateBenchmark {
+    private static final int DATES = 1024;
+
+    @Param({"10", "100", "1000"})
+    public int yearSpan;
+
+    private Date[] dates;
+    private int[] packed;
+    private int i;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        long firstDay = new Date(1, 1, SyntheticCsv.FIRST_YEAR).toEpochDay();
+        dates = new Date[DATES];
+        packed = new int[DATES];
+        for (int j = 0; j < DATES; j++) {
+            dates[j] = Date.ofEpochDay(firstDay + random.nextInt(yearSpan * 365));
+            packed[j] = dates[j].toPacked();
+        }
+    }
+
+    private int next() {
+        return i = (i + 1) & (DATES - 1);
+    }
+
+    @Benchmark
+    public int differenceInDays() {
+        int j = next();
+        return dates[j].differenceInDays(dates[(j * 31 + 7) & (DATES - 1)]);
+    }
+
+    @Benchmark
+    public int legacyDifferenceInDays() {
+        int j = next();
+        return legacyDays(dates[(j * 31 + 7) & (DATES - 1)]) - legacyDays(dates[j]);
+    }
+
+    @Benchmark
+    public int compareTo() {
+        int j = next();
+        return dates[j].compareTo(dates[(j * 31 + 7) & (DATES - 1)]);
+    }
+
+    @Benchmark
+    public Date nextDay() {
+        return dates[next()].nextDay();
+    }
+
+    @Benchmark
+    public Date plusDays() {
+        return dates[next()].plusDays(400);
+    }
+
+    @Benchmark
+    public int packedNextDay() {
+        return PackedDate.nextDay(packed[next()]);
+    }
+
+    private static int legacyDays(Date date) {
+        int totalDays = 0;
+        for (int y = 1; y < date.getYear(); y++) {
+            totalDays += Date.isLeapYear(y) ? 366 : 365;
+        }
+        for (int m = 1; m < date.getMonth(); m++) {
+            totalDays += Date.daysOfMonth(m, date.getYear());
+        }
+        return totalDays + date.getDay();
+    }
+}
@@ -0,0 +1,97 @@
+package org.example;
+
+import java.lang.ref.Reference;
+import java.util.Random;
+
+/**
+ * Compares heap use and per-team total throughput of {@link MembershipIndex}
+ * (one {@link Player} with {@link Membership} objects per player) against the
+ * columnar {@link MembershipStore}. Run with
+ * {@code java -cp benchmarks.jar org.example.MembershipStoreFootprint [players] [membershipsPerPlayer]}.
+ * Throughput alone is covered by {@link PlayerBenchmark}; this measures retained heap,
+ * which JMH does not.
+ */
+public class MembershipStoreFootprint {
+    private static final int TEAMS = 64;
+
+    public static void main(String[] args) {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int membershipsPerPlayer = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        String[] playerNames = new String[players];
+        for (int i = 0; i < players; i++)
+            playerNames[i] = "Player" + i;
+        String[] teamNames = new String[TEAMS];
+        for (int i = 0; i < TEAMS; i++)
+            teamNames[i] = "Team" + i;
+
+        long baseline = usedHeap();
+        MembershipIndex index = new MembershipIndex();
+        fill(playerNames, teamNames, membershipsPerPlayer, (player, team, start, end) ->
+                index.addMembership(player, new Membership(new String(team), PackedDate.ofEpochDay(start), PackedDate.ofEpochDay(end))));
+        long indexBytes = usedHeap() - baseline;
+
+        baseline = usedHeap();
+        MembershipStore store = new MembershipStore();
+        fill(playerNames, teamNames, membershipsPerPlayer, (player, team, start, end) ->
+                store.add(player, new String(team), start, end));
+        long storeBytes = usedHeap() - baseline;
+
+        long indexNanos = 0;
+        long storeNanos = 0;
+        for (int round = 0; round < 5; round++) {
+            indexNanos = queryAll((player, team) -> index.getPlayer(player).getTotalMembershipDays(team), playerNames, teamNames);
+            storeNanos = queryAll(store::getTotalMembershipDays, playerNames, teamNames);
+        }
+
+        long rows = (long) players * membershipsPerPlayer;
+        System.out.printf("rows:                %d%n", rows);
+        System.out.printf("Player/Membership:   %.1f bytes/row, %.1f ns/query%n", (double) indexBytes / rows, (double) indexNanos / players);
+        System.out.printf("MembershipStore:     %.1f bytes/row, %.1f ns/query%n", (double) storeBytes / rows, (double) storeNanos / players);
+        // Keep both structures reachable until after the measurements
+        Reference.reachabilityFence(index);
+        Reference.reachabilityFence(store);
+    }
+
+    private interface RowSink {
+        void add(String player, String team, int startDay, int endDay);
+    }
+
+    /**
+     * Team names are copied per row, as the CSV readers create a new String for each row.
+     */
+    private static void fill(String[] playerNames, String[] teamNames, int membershipsPerPlayer, RowSink sink) {
+        Random random = new Random(42);
+        int firstDay = (int) Date.epochDay(1, 1, 1300);
+        for (String player : playerNames) {
+            int day = firstDay + random.nextInt(365);
+            for (int i = 0; i < membershipsPerPlayer; i++) {
+                int end = day + random.nextInt(1000);
+                sink.add(player, teamNames[random.nextInt(teamNames.length)], day, end);
+                day = end + 1 + random.nextInt(100);
+            }
+        }
+    }
+
+    private interface TotalQuery {
+        int totalDays(String player, String team);
+    }
+
+    private static long queryAll(TotalQuery query, String[] playerNames, String[] teamNames) {
+        long start = System.nanoTime();
+        long sum = 0;
+        for (int i = 0; i < playerNames.length; i++)
+            sum += query.totalDays(playerNames[i], teamNames[i % teamNames.length]);
+        long elapsed = System.nanoTime() - start;
+        if (sum == 42)
+            System.out.println();
+        return elapsed;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
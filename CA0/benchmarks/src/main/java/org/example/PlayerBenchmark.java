@@ -0,0 +1,78 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building one player's history and summing it per team, for histories of
+ * {@code memberships} entries over {@code yearSpan} years. Memberships are added
+ * in shuffled order so inserts are not all appends.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlayerBenchmark {
+    private static final int TEAMS = 20;
+
+    @Param({"10", "100", "1000"})
+    public int memberships;
+
+    @Param({"100"})
+    public int yearSpan;
+
+    private List<Membership> history;
+    private Player player;
+    private MembershipStore store;
+
+    @Setup
+    public void setUp() {
+        history = new ArrayList<>();
+        store = new MembershipStore();
+        SyntheticCsv.generate(memberships, 1, TEAMS, yearSpan, 42, (p, team, startDay, endDay) -> {
+            history.add(new Membership("Team" + team, PackedDate.ofEpochDay(startDay), PackedDate.ofEpochDay(endDay)));
+            store.add("Player", "Team" + team, startDay, endDay);
+        });
+        Collections.shuffle(history, new Random(42));
+        player = addAll();
+    }
+
+    @Benchmark
+    public Player addMembership() {
+        return addAll();
+    }
+
+    @Benchmark
+    public int getTotalMembershipDays() {
+        return player.getTotalMembershipDays("Team7");
+    }
+
+    @Benchmark
+    public int storeTotalMembershipDays() {
+        return store.getTotalMembershipDays("Player", "Team7");
+    }
+
+    private Player addAll() {
+        Player result = new Player("Player");
+        for (Membership membership : history)
+            result.addMembership(membership);
+        return result;
+    }
+}
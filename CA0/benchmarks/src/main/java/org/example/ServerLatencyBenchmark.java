@@ -0,0 +1,97 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Compares a one-shot {@code java org.example.Main} process per query against warm
+ * queries to a {@link MembershipServer} over loopback TCP. Run with
+ * {@code java -cp benchmarks.jar org.example.ServerLatencyBenchmark [csvFile] [player] [team] [processes] [queries]}.
+ */
+public class ServerLatencyBenchmark {
+    public static void main(String[] args) throws Exception {
+        String csvFile = args.length > 0 ? args[0] : "src/input.csv";
+        String player = args.length > 1 ? args[1] : "Gholam";
+        String team = args.length > 2 ? args[2] : "Golgohar";
+        int processes = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        int queries = args.length > 4 ? Integer.parseInt(args[4]) : 20_000;
+
+        long[] oneShot = new long[processes];
+        for (int i = 0; i < processes; i++)
+            oneShot[i] = runOneShot(csvFile, player, team);
+        report("one-shot process", oneShot);
+
+        try (MembershipServer server = new MembershipServer(Path.of(csvFile));
+             ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            Thread serverThread = new Thread(() -> {
+                try {
+                    server.serve(serverSocket);
+                } catch (IOException e) {
+                    // Closed at the end of the benchmark
+                }
+            });
+            serverThread.setDaemon(true);
+            serverThread.start();
+
+            try (Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+                 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                 PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+                socket.setTcpNoDelay(true);
+                String request = "TOTAL " + player + " " + team;
+                query(in, out, request, queries / 4); // JIT warm-up
+                long[] warm = new long[queries];
+                for (int i = 0; i < queries; i++)
+                    warm[i] = query(in, out, request, 1);
+                report("warm server query", warm);
+            }
+        }
+    }
+
+    private static long runOneShot(String csvFile, String player, String team) throws IOException, InterruptedException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                Main.class.getName(), csvFile, player, team);
+        builder.redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.to(new File(nullDevice())));
+        long start = System.nanoTime();
+        int exitCode = builder.start().waitFor();
+        long elapsed = System.nanoTime() - start;
+        if (exitCode != 0)
+            throw new IllegalStateException("Main exited with " + exitCode);
+        return elapsed;
+    }
+
+    private static long query(BufferedReader in, PrintWriter out, String request, int times) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < times; i++) {
+            out.println(request);
+            out.flush();
+            in.readLine();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String name, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-18s n=%-6d p50=%10.3f ms  p99=%10.3f ms  max=%10.3f ms%n", name, sorted.length,
+                percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.99) / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+    private static String nullDevice() {
+        return System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null";
+    }
+}
@@ -0,0 +1,79 @@
+package org.example;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Reproducible membership data: the same arguments and seed always give the same rows.
+ * Rows rotate through the players, and each player's memberships follow one another
+ * without overlapping, so every row is accepted by {@link Player#addMembership}.
+ * <p>
+ * {@code java -cp benchmarks.jar org.example.SyntheticCsv <file> [rows] [players] [teams] [yearSpan] [seed]}
+ */
+public class SyntheticCsv {
+    public static final int FIRST_YEAR = 1300;
+
+    public interface RowConsumer {
+        void accept(int player, int team, int startDay, int endDay);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path file = Path.of(args[0]);
+        long rows = args.length > 1 ? Long.parseLong(args[1]) : 1_000_000;
+        int players = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+        int teams = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+        int yearSpan = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 42;
+
+        write(file, rows, players, teams, yearSpan, seed);
+        System.out.println("Wrote " + rows + " rows (" + Files.size(file) + " bytes) to " + file);
+    }
+
+    public static void write(Path file, long rows, int players, int teams, int yearSpan, long seed) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder(64);
+            IOException[] failure = new IOException[1];
+            generate(rows, players, teams, yearSpan, seed, (player, team, startDay, endDay) -> {
+                Date start = Date.ofEpochDay(startDay);
+                Date end = Date.ofEpochDay(endDay);
+                line.setLength(0);
+                line.append("Player").append(player).append(",Team").append(team).append(',')
+                        .append(start.getDay()).append(',').append(start.getMonth()).append(',').append(start.getYear()).append(',')
+                        .append(end.getDay()).append(',').append(end.getMonth()).append(',').append(end.getYear()).append('\n');
+                try {
+                    out.append(line);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null)
+                throw failure[0];
+        }
+    }
+
+    /**
+     * Memberships are spread so that each player's history covers roughly {@code yearSpan} years.
+     */
+    public static void generate(long rows, int players, int teams, int yearSpan, long seed, RowConsumer consumer) {
+        SplittableRandom random = new SplittableRandom(seed);
+        long membershipsPerPlayer = Math.max(1, (rows + players - 1) / players);
+        int averageLength = (int) Math.max(2, yearSpan * 365L / membershipsPerPlayer);
+
+        int firstDay = (int) new Date(1, 1, FIRST_YEAR).toEpochDay();
+        int[] nextStart = new int[players];
+        for (int player = 0; player < players; player++)
+            nextStart[player] = firstDay + random.nextInt(365);
+
+        for (long row = 0; row < rows; row++) {
+            int player = (int) (row % players);
+            int start = nextStart[player];
+            int end = start + random.nextInt(averageLength);
+            consumer.accept(player, random.nextInt(teams), start, end);
+            nextStart[player] = end + 1 + random.nextInt(averageLength / 2 + 1);
+        }
+    }
+}
@@ -3,9 +3,26 @@ package org.example;
 import java.util.Objects;
 
 public class Date implements Comparable<Date> {
+    private static final int CYCLE_YEARS = 33;
+    private static final int DAYS_PER_CYCLE;
+    // Days from the start of a 33-year cycle to the start of each year in it (index 0..33).
+    private static final int[] CYCLE_YEAR_START = new int[CYCLE_YEARS + 1];
+    // Days from the start of a year to the start of each month (index 0..11).
+    private static final int[] MONTH_START = new int[12];
+
+    static {
+        for (int r = 0; r < CYCLE_YEARS; r++)
+            CYCLE_YEAR_START[r + 1] = CYCLE_YEAR_START[r] + (isLeapYear(r) ? 366 : 365);
+        DAYS_PER_CYCLE = CYCLE_YEAR_START[CYCLE_YEARS];
+
+        for (int m = 1; m < 12; m++)
+            MONTH_START[m] = MONTH_START[m - 1] + daysOfMonth(m, 0);
+    }
+
     private final int day;
     private final int month;
     private final int year;
+    private final long epochDay;
 
     public Date(int day, int month, int year) {
         if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysOfMonth(month, year))
@@ -14,6 +31,70 @@ public class Date implements Comparable<Date> {
         this.day = day;
         this.month = month;
         this.year = year;
+        this.epochDay = epochDay(day, month, year);
+    }
+
+    /**
+     * Parses the {@code day/month/year} form produced by {@link #toString()}.
+     */
+    public static Date parse(String text) {
+        String[] parts = text.split("/");
+        if (parts.length != 3)
+            throw new IllegalArgumentException("Invalid date");
+        return new Date(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()), Integer.parseInt(parts[2].trim()));
+    }
+
+    public static Date ofEpochDay(long epochDay) {
+        if (epochDay < 0)
+            throw new IllegalArgumentException("Invalid epoch day");
+
+        long cycle = epochDay / DAYS_PER_CYCLE;
+        int dayOfCycle = (int) (epochDay % DAYS_PER_CYCLE);
+        int r = yearOfCycle(dayOfCycle);
+        int dayOfYear = dayOfCycle - CYCLE_YEAR_START[r];
+        int m = monthOfYear(dayOfYear);
+        return new Date(dayOfYear - MONTH_START[m - 1] + 1, m, Math.toIntExact(cycle * CYCLE_YEARS + r));
+    }
+
+    static Date fromPacked(int packed) {
+        return new Date(PackedDate.day(packed), PackedDate.month(packed), PackedDate.year(packed));
+    }
+
+    int toPacked() {
+        return PackedDate.pack(day, month, year);
+    }
+
+    /**
+     * Packed form for range queries: a date past {@link PackedDate#MAX_YEAR} lies after every
+     * packed date, so it is clamped to the last one.
+     */
+    int toPackedBound() {
+        return year > PackedDate.MAX_YEAR ? PackedDate.pack(31, 12, PackedDate.MAX_YEAR) : toPacked();
+    }
+
+    public int getDay() {
+        return day;
+    }
+
+    public int getMonth() {
+        return month;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    /**
+     * Number of days since 1/1/0, the earliest valid date.
+     */
+    public long toEpochDay() {
+        return epochDay;
+    }
+
+    public Date plusDays(long days) {
+        if (days == 0)
+            return this;
+        return ofEpochDay(epochDay + days);
     }
 
     public Date nextDay() {
@@ -53,14 +134,10 @@ public class Date implements Comparable<Date> {
 
     @Override
     public int compareTo(Date other) {
-        if (this.year != other.year)
-            return this.year - other.year;
-        if (this.month != other.month)
-            return this.month - other.month;
-        return this.day - other.day;
+        return Long.compare(this.epochDay, other.epochDay);
     }
 
-    private static int daysOfMonth(int month, int year) {
+    static int daysOfMonth(int month, int year) {
         if (month < 1 || month > 12)
             throw new IllegalArgumentException("Invalid value for month");
         if (month < 7)
@@ -71,32 +148,45 @@ public class Date implements Comparable<Date> {
             return isLeapYear(year) ? 30 : 29;
     }
 
-    private static boolean isLeapYear(int year) {
+    static boolean isLeapYear(int year) {
         int r = year % 33;
         return r==1 || r==5 || r==9 || r==13 || r==17 || r==22 || r==26 || r==30;
     }
 
     public int differenceInDays(Date other) {
-
-        int thisDays = this.toDays();
-        int otherDays = other.toDays();
-
-        return otherDays - thisDays;
+        return Math.toIntExact(other.epochDay - this.epochDay);
     }
 
-    private int toDays() {
-        int totalDays = 0;
-
-        for (int y = 1; y < year; y++) {
-            totalDays += isLeapYear(y) ? 366 : 365;
-        }
+    static long epochDay(int day, int month, int year) {
+        long cycles = year / CYCLE_YEARS;
+        int r = year % CYCLE_YEARS;
+        return cycles * DAYS_PER_CYCLE + CYCLE_YEAR_START[r] + MONTH_START[month - 1] + day - 1;
+    }
 
-        for (int m = 1; m < month; m++) {
-            totalDays += daysOfMonth(m, year);
-        }
+    static int packedOfEpochDay(long epochDay) {
+        if (epochDay < 0)
+            throw new IllegalArgumentException("Invalid epoch day");
+
+        long cycle = epochDay / DAYS_PER_CYCLE;
+        if (cycle > PackedDate.MAX_YEAR / CYCLE_YEARS + 1)
+            throw new IllegalArgumentException("Invalid epoch day");
+        int dayOfCycle = (int) (epochDay % DAYS_PER_CYCLE);
+        int r = yearOfCycle(dayOfCycle);
+        int dayOfYear = dayOfCycle - CYCLE_YEAR_START[r];
+        int m = monthOfYear(dayOfYear);
+        int d = dayOfYear - MONTH_START[m - 1] + 1;
+        return PackedDate.pack(d, m, Math.toIntExact(cycle * CYCLE_YEARS + r));
+    }
 
-        totalDays += day;
+    private static int yearOfCycle(int dayOfCycle) {
+        // Years have at least 365 days, so this overshoots the real year by at most one.
+        int r = Math.min(dayOfCycle / 365, CYCLE_YEARS - 1);
+        if (CYCLE_YEAR_START[r] > dayOfCycle)
+            r--;
+        return r;
+    }
 
-        return totalDays;
+    private static int monthOfYear(int dayOfYear) {
+        return dayOfYear < MONTH_START[6] ? dayOfYear / 31 + 1 : (dayOfYear - MONTH_START[6]) / 30 + 7;
     }
 }
\ No newline at end of file
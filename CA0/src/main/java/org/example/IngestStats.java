@@ -0,0 +1,114 @@
+package org.example;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counters for one ingest run: rows seen, rows rejected by reason, and time spent
+ * parsing versus adding rows to the model. Rejected rows go to an optional
+ * {@link RejectSink}. Instances are not thread-safe; parallel loaders keep one per
+ * chunk and {@link #merge} them.
+ */
+class IngestStats {
+    static final int OK = 0;
+    static final int MISSING_FIELDS = 1;
+    static final int BAD_NUMBER = 2;
+    static final int INVALID_DATE = 3;
+    static final int INVALID_MEMBERSHIP = 4;
+    static final int OVERLAP = 5;
+    static final int MALFORMED_LINE = 6;
+
+    private static final String[] REASONS = {
+            "ok", "missing fields", "bad number", "invalid date", "invalid membership", "overlap", "malformed line"
+    };
+
+    private final RejectSink sink;
+    private final long[] rejects = new long[REASONS.length];
+    private long rows;
+    private long aggregateNanos;
+    private long totalNanos;
+
+    IngestStats() {
+        this(null);
+    }
+
+    IngestStats(RejectSink sink) {
+        this.sink = sink;
+    }
+
+    static String reason(int status) {
+        return REASONS[status];
+    }
+
+    void accepted() {
+        rows++;
+    }
+
+    void rejected(int status, String row) {
+        rows++;
+        rejects[status]++;
+        if (sink != null)
+            sink.write(status, row);
+    }
+
+    /**
+     * Counts a row that was accepted earlier (e.g. by a parallel chunk) but rejected when merged.
+     */
+    void rejectedLater(int status, String row) {
+        rows--;
+        rejected(status, row);
+    }
+
+    void addAggregateTime(long nanos) {
+        aggregateNanos += nanos;
+    }
+
+    void addTotalTime(long nanos) {
+        totalNanos += nanos;
+    }
+
+    RejectSink getSink() {
+        return sink;
+    }
+
+    IngestStats merge(IngestStats other) {
+        rows += other.rows;
+        aggregateNanos += other.aggregateNanos;
+        for (int i = 0; i < rejects.length; i++)
+            rejects[i] += other.rejects[i];
+        return this;
+    }
+
+    long getRows() {
+        return rows;
+    }
+
+    long getRejects(int status) {
+        return rejects[status];
+    }
+
+    long getTotalRejects() {
+        long total = 0;
+        for (long count : rejects)
+            total += count;
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder();
+        double seconds = totalNanos / 1e9;
+        summary.append(rows).append(" rows in ").append(TimeUnit.NANOSECONDS.toMillis(totalNanos)).append(" ms");
+        if (seconds > 0)
+            summary.append(String.format(" (%.0f rows/s)", rows / seconds));
+        summary.append(", parse ").append(TimeUnit.NANOSECONDS.toMillis(Math.max(0, totalNanos - aggregateNanos)))
+                .append(" ms, aggregate ").append(TimeUnit.NANOSECONDS.toMillis(aggregateNanos)).append(" ms");
+        summary.append(", ").append(getTotalRejects()).append(" rejected");
+        for (int i = 1; i < rejects.length; i++) {
+            if (rejects[i] > 0)
+                summary.append(System.lineSeparator()).append("  ").append(REASONS[i]).append(": ").append(rejects[i]);
+        }
+        if (sink != null && sink.getDropped() > 0)
+            summary.append(System.lineSeparator()).append("  ").append(sink.getDropped()).append(" rejected rows not written to ").append(sink.getFile());
+        return summary.toString();
+    }
+}
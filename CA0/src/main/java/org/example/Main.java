@@ -1,61 +1,212 @@
 package org.example;
 
-import com.opencsv.CSVReader;
-import java.io.FileReader;
+import java.io.BufferedReader;
 import java.io.IOException;
-import com.opencsv.exceptions.CsvValidationException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 
 public class Main {
     public static void main(String[] args) {
         String csvFile = "src/input.csv";
-        String playerName = "Gholam";
-        String teamName = "Golgohar";
-
-        try (CSVReader reader = new CSVReader(new FileReader(csvFile))) {
-            String[] nextLine;
-            Player player = new Player(playerName);
-
-            // Read the first line outside the loop
-            nextLine = reader.readNext();
-
-            while (nextLine != null) {
-                try {
-                    String currentName = nextLine[0];
-                    String currentTeam = nextLine[1];
-
-                    if (currentName.equals(playerName) && currentTeam.equals(teamName)) {
-                        int startDay = Integer.parseInt(nextLine[2]);
-                        int startMonth = Integer.parseInt(nextLine[3]);
-                        int startYear = Integer.parseInt(nextLine[4]);
-                        int endDay = Integer.parseInt(nextLine[5]);
-                        int endMonth = Integer.parseInt(nextLine[6]);
-                        int endYear = Integer.parseInt(nextLine[7]);
-
-                        Date startDate = new Date(startDay, startMonth, startYear);
-                        Date endDate = new Date(endDay, endMonth, endYear);
-                        Membership membership = new Membership(teamName, startDate, endDate);
-
-                        player.addMembership(membership);
-                    }
-                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
-                    // Handle invalid data format or missing fields
-                    e.printStackTrace();
-                }
-
-                // Read the next line inside the loop
-                nextLine = reader.readNext();
+        List<String[]> queries = new ArrayList<>();
+        List<String[]> rosterQueries = new ArrayList<>();
+        int topN = 0;
+        boolean teamTotals = false;
+        int parallelism = 0;
+        boolean mapped = false;
+        boolean snapshot = false;
+        String snapshotOutput = null;
+        boolean watch = false;
+        boolean compact = false;
+        int servePort = -1;
+        String rejectsFile = null;
+        long maxRejects = 10_000;
+        boolean printStats = false;
+
+        List<String> positional = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--top="))
+                topN = Integer.parseInt(arg.substring("--top=".length()));
+            else if (arg.equals("--parallel"))
+                parallelism = Runtime.getRuntime().availableProcessors();
+            else if (arg.startsWith("--parallel="))
+                parallelism = Integer.parseInt(arg.substring("--parallel=".length()));
+            else if (arg.equals("--mapped"))
+                mapped = true;
+            else if (arg.equals("--snapshot"))
+                snapshot = true;
+            else if (arg.startsWith("--write-snapshot="))
+                snapshotOutput = arg.substring("--write-snapshot=".length());
+            else if (arg.equals("--watch"))
+                watch = true;
+            else if (arg.equals("--compact"))
+                compact = true;
+            else if (arg.startsWith("--roster="))
+                rosterQueries.add(arg.substring("--roster=".length()).split("@", 2));
+            else if (arg.equals("--serve"))
+                servePort = 0;
+            else if (arg.startsWith("--serve="))
+                servePort = Integer.parseInt(arg.substring("--serve=".length()));
+            else if (arg.startsWith("--rejects="))
+                rejectsFile = arg.substring("--rejects=".length());
+            else if (arg.startsWith("--max-rejects="))
+                maxRejects = Long.parseLong(arg.substring("--max-rejects=".length()));
+            else if (arg.equals("--stats"))
+                printStats = true;
+            else if (arg.equals("--teams"))
+                teamTotals = true;
+            else
+                positional.add(arg);
+        }
+        if (!positional.isEmpty())
+            csvFile = positional.get(0);
+        for (int i = 1; i + 1 < positional.size(); i += 2)
+            queries.add(new String[]{positional.get(i), positional.get(i + 1)});
+        if (positional.size() <= 1)
+            queries.add(new String[]{"Gholam", "Golgohar"});
+
+        if (compact && !rosterQueries.isEmpty()) {
+            System.out.println("--roster needs the full membership index; run it without --compact");
+            return;
+        }
+
+        if (servePort >= 0) {
+            serve(Path.of(csvFile), servePort);
+            return;
+        }
+
+        if (watch) {
+            watch(Path.of(csvFile), queries, teamTotals, topN);
+            return;
+        }
+
+        try (RejectSink rejects = rejectsFile == null ? null : new RejectSink(Path.of(rejectsFile), maxRejects)) {
+            IngestStats stats = new IngestStats(rejects);
+            MembershipQueries index;
+            MembershipIndex model = null;
+            if (snapshot) {
+                index = MembershipSnapshot.open(Path.of(csvFile));
+                if (!rosterQueries.isEmpty())
+                    model = ((MembershipSnapshot) index).toIndex();
+            } else if (compact) {
+                index = MembershipStore.load(csvFile, stats);
+            } else {
+                model = parallelism > 0
+                        ? ParallelCsvIngest.load(csvFile, parallelism, stats)
+                        : mapped ? MappedCsvParser.load(csvFile, stats) : MembershipIndex.load(csvFile, stats);
+                if (snapshotOutput != null)
+                    MembershipSnapshot.write(model, Path.of(snapshotOutput));
+                index = model;
             }
+            if (printStats || stats.getTotalRejects() > 0)
+                System.err.println(stats);
+            printResults(index, queries, teamTotals, topN);
 
-            int totalMembershipDays = player.getTotalMembershipDays(teamName);
-            System.out.println(playerName + " has been a member of team " + teamName + " for " + totalMembershipDays + " days.");
-        } catch (IOException | CsvValidationException e) {
+            if (!rosterQueries.isEmpty())
+                printRosters(new RosterIndex(model), rosterQueries);
+        } catch (IOException e) {
             // Handle IO exceptions or CSV validation exceptions
             e.printStackTrace();
         }
     }
-}
 
+    /**
+     * Port 0 answers queries on stdin/stdout, any other port listens on loopback TCP.
+     */
+    private static void serve(Path csvFile, int port) {
+        try (MembershipServer server = new MembershipServer(csvFile)) {
+            if (port == 0)
+                server.serve(new BufferedReader(new InputStreamReader(System.in)), new PrintWriter(System.out));
+            else
+                server.serve(port);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
+    private static void watch(Path csvFile, List<String[]> queries, boolean teamTotals, int topN) {
+        try (MembershipWatcher watcher = new MembershipWatcher(csvFile)) {
+            printResults(watcher.getIndex(), queries, teamTotals, topN);
+            while (true) {
+                if (watcher.awaitChanges(1000) == 0)
+                    continue;
+                Map<String, Set<String>> changes = watcher.takeChanges();
+                if (changes != null && changes.isEmpty())
+                    continue;
+                System.out.println("-- updated at byte " + watcher.getOffset());
+                if (changes == null)
+                    printResults(watcher.getIndex(), queries, teamTotals, topN);
+                else
+                    printChanges(watcher.getIndex(), changes, queries, teamTotals, topN);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
+    /**
+     * Reprints only the results that {@code changes} (players added to, by team) can affect:
+     * the matching queries, and the totals and top players of each changed team.
+     */
+    private static void printChanges(MembershipIndex index, Map<String, Set<String>> changes, List<String[]> queries, boolean teamTotals, int topN) {
+        for (String[] query : queries) {
+            String playerName = query[0];
+            String teamName = query[1];
+            if (changes.getOrDefault(teamName, Set.of()).contains(playerName))
+                System.out.println(playerName + " has been a member of team " + teamName + " for " + index.getTotalMembershipDays(playerName, teamName) + " days.");
+        }
+
+        if (teamTotals || topN > 0) {
+            Map<String, Integer> totals = index.getTeamTotals();
+            for (Map.Entry<String, Set<String>> team : changes.entrySet()) {
+                System.out.println("Team " + team.getKey() + ": " + totals.get(team.getKey()) + " membership days in total.");
+                for (Map.Entry<String, Integer> player : index.getTopPlayers(team.getKey(), topN))
+                    System.out.println("  " + player.getKey() + ": " + player.getValue() + " days");
+            }
+        }
+    }
 
+    private static void printRosters(RosterIndex rosters, List<String[]> rosterQueries) {
+        for (String[] query : rosterQueries) {
+            if (query.length != 2) {
+                System.out.println("Expected --roster=<team>@<day>/<month>/<year>");
+                continue;
+            }
+            String teamName = query[0];
+            Date date;
+            try {
+                date = Date.parse(query[1]);
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid date '" + query[1] + "'; expected --roster=<team>@<day>/<month>/<year>");
+                continue;
+            }
+            List<String> roster = rosters.getRoster(teamName, date);
+            System.out.println("Team " + teamName + " on " + date + " had " + roster.size() + " players: " + String.join(", ", roster));
+        }
+    }
+
+    private static void printResults(MembershipQueries index, List<String[]> queries, boolean teamTotals, int topN) {
+        for (String[] query : queries) {
+            String playerName = query[0];
+            String teamName = query[1];
+            int totalMembershipDays = index.getTotalMembershipDays(playerName, teamName);
+            System.out.println(playerName + " has been a member of team " + teamName + " for " + totalMembershipDays + " days.");
+        }
+
+        if (teamTotals || topN > 0) {
+            for (Map.Entry<String, Integer> team : index.getTeamTotals().entrySet()) {
+                System.out.println("Team " + team.getKey() + ": " + team.getValue() + " membership days in total.");
+                for (Map.Entry<String, Integer> player : index.getTopPlayers(team.getKey(), topN))
+                    System.out.println("  " + player.getKey() + ": " + player.getValue() + " days");
+            }
+        }
+    }
+}
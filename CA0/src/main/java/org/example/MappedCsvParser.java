@@ -0,0 +1,238 @@
+package org.example;
+
+import com.opencsv.CSVParser;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiPredicate;
+
+/**
+ * Parses membership rows straight out of a memory-mapped file. The six date fields
+ * are decoded from bytes and only the player and team names become Strings, through
+ * an intern table. Lines with quotes or an unexpected shape go through OpenCSV instead.
+ * Rejected rows are reported to an {@link IngestStats} without building exceptions.
+ */
+class MappedCsvParser {
+    private static final int FIELDS = 8;
+    private static final long WINDOW_SIZE = 256L << 20;
+
+    private final StringTable names = new StringTable();
+    private final CSVParser fallback = new CSVParser();
+    private final MembershipRowParser rowParser = new MembershipRowParser();
+    private final int[] fieldStart = new int[FIELDS];
+    private final int[] fieldEnd = new int[FIELDS];
+    private final int[] values = new int[6];
+    private final IngestStats stats;
+
+    MappedCsvParser(IngestStats stats) {
+        this.stats = stats;
+    }
+
+    public static MembershipIndex load(String csvFile) throws IOException {
+        return load(csvFile, new IngestStats());
+    }
+
+    public static MembershipIndex load(String csvFile, IngestStats stats) throws IOException {
+        long start = System.nanoTime();
+        MembershipIndex index = new MembershipIndex();
+        try (FileChannel channel = FileChannel.open(Path.of(csvFile), StandardOpenOption.READ)) {
+            new MappedCsvParser(stats).parse(channel, 0, channel.size(), index::tryAddMembership);
+        }
+        stats.addTotalTime(System.nanoTime() - start);
+        return index;
+    }
+
+    /**
+     * Hands every valid row in {@code [start, end)} to {@code handler}; {@code start} must be
+     * at the beginning of a line. Invalid rows, and rows the handler refuses by returning
+     * false (an overlap), are counted in the stats and skipped.
+     */
+    public void parse(FileChannel channel, long start, long end, BiPredicate<String, Membership> handler) throws IOException {
+        long position = start;
+        while (position < end) {
+            long windowEnd = Math.min(end, position + WINDOW_SIZE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, windowEnd - position);
+            int limit = buffer.limit();
+            int lineStart = 0;
+            while (lineStart < limit) {
+                int lineEnd = indexOf(buffer, (byte) '\n', lineStart, limit);
+                if (lineEnd < 0) {
+                    if (windowEnd < end && lineStart > 0)
+                        break; // Remap from the start of this partial line
+                    lineEnd = limit;
+                }
+                parseLine(buffer, lineStart, lineEnd, handler);
+                lineStart = lineEnd + 1;
+            }
+            position += Math.min(lineStart, limit);
+        }
+    }
+
+    private void parseLine(MappedByteBuffer buffer, int start, int end, BiPredicate<String, Membership> handler) {
+        if (end > start && buffer.get(end - 1) == '\r')
+            end--;
+
+        int status;
+        if (splitFields(buffer, start, end) && parseNumbers(buffer)) {
+            status = rowParser.build(names.intern(buffer, fieldStart[0], fieldEnd[0]), names.intern(buffer, fieldStart[1], fieldEnd[1]),
+                    values[0], values[1], values[2], values[3], values[4], values[5]);
+        } else {
+            try {
+                status = rowParser.parse(fallback.parseLine(decode(buffer, start, end)));
+            } catch (IOException e) {
+                // Unterminated quotes; only irregular lines reach OpenCSV
+                status = IngestStats.MALFORMED_LINE;
+            }
+        }
+
+        if (status == IngestStats.OK) {
+            long aggregateStart = System.nanoTime();
+            if (!handler.test(rowParser.getPlayerName(), rowParser.getMembership()))
+                status = IngestStats.OVERLAP;
+            stats.addAggregateTime(System.nanoTime() - aggregateStart);
+        }
+        if (status == IngestStats.OK)
+            stats.accepted();
+        else
+            stats.rejected(status, decode(buffer, start, end));
+    }
+
+    /**
+     * Records the bounds of exactly eight unquoted fields, or returns false.
+     */
+    private boolean splitFields(MappedByteBuffer buffer, int start, int end) {
+        int field = 0;
+        fieldStart[0] = start;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '"')
+                return false;
+            if (b == ',') {
+                if (field == FIELDS - 1)
+                    return false;
+                fieldEnd[field] = i;
+                fieldStart[++field] = i + 1;
+            }
+        }
+        fieldEnd[field] = end;
+        return field == FIELDS - 1;
+    }
+
+    /**
+     * Reads the six numeric fields as plain digits, or returns false so that the row goes
+     * through OpenCSV and {@link MembershipRowParser} instead.
+     */
+    private boolean parseNumbers(MappedByteBuffer buffer) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = parseDigits(buffer, fieldStart[i + 2], fieldEnd[i + 2]);
+            if (values[i] < 0)
+                return false;
+        }
+        return true;
+    }
+
+    private static int parseDigits(MappedByteBuffer buffer, int start, int end) {
+        if (end <= start || end - start > 9)
+            return -1;
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9)
+                return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int indexOf(MappedByteBuffer buffer, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == value)
+                return i;
+        }
+        return -1;
+    }
+
+    private static String decode(MappedByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Open-addressing map from UTF-8 byte ranges to Strings, so each distinct name is
+     * decoded once and shared by every row that mentions it.
+     */
+    private static class StringTable {
+        private byte[][] keys = new byte[256][];
+        private String[] values = new String[256];
+        private int size;
+
+        String intern(MappedByteBuffer buffer, int start, int end) {
+            int hash = hash(buffer, start, end);
+            int mask = keys.length - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                byte[] key = keys[slot];
+                if (key == null)
+                    return insert(slot, buffer, start, end);
+                if (matches(key, buffer, start, end))
+                    return values[slot];
+            }
+        }
+
+        private String insert(int slot, MappedByteBuffer buffer, int start, int end) {
+            byte[] key = new byte[end - start];
+            buffer.get(start, key);
+            String value = new String(key, StandardCharsets.UTF_8);
+            keys[slot] = key;
+            values[slot] = value;
+            if (++size * 2 > keys.length)
+                grow();
+            return value;
+        }
+
+        private void grow() {
+            byte[][] oldKeys = keys;
+            String[] oldValues = values;
+            keys = new byte[oldKeys.length * 2][];
+            values = new String[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == null)
+                    continue;
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != null)
+                    slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+
+        private static boolean matches(byte[] key, MappedByteBuffer buffer, int start, int end) {
+            if (key.length != end - start)
+                return false;
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != buffer.get(start + i))
+                    return false;
+            }
+            return true;
+        }
+
+        private static int hash(MappedByteBuffer buffer, int start, int end) {
+            int h = 1;
+            for (int i = start; i < end; i++)
+                h = 31 * h + buffer.get(i);
+            return h ^ (h >>> 16);
+        }
+
+        private static int hash(byte[] key) {
+            int h = 1;
+            for (byte b : key)
+                h = 31 * h + b;
+            return h ^ (h >>> 16);
+        }
+    }
+}
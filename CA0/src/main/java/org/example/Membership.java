@@ -2,28 +2,69 @@ package org.example;
 
 class Membership {
     private String teamName;
-    private Date startDate;
-    private Date endDate;
+    private int startDate;
+    private int endDate;
 
     public Membership(String teamName, Date startDate, Date endDate) {
         if (teamName == null || teamName.isEmpty() || startDate == null || endDate == null || !(startDate instanceof Date) || !(endDate instanceof Date) || startDate.compareTo(endDate) > 0) {
             throw new IllegalArgumentException("Invalid arguments for membership");
         }
 
+        this.teamName = teamName;
+        this.startDate = startDate.toPacked();
+        this.endDate = endDate.toPacked();
+    }
+
+    Membership(String teamName, int startDate, int endDate) {
+        if (!isValid(teamName, startDate, endDate)) {
+            throw new IllegalArgumentException("Invalid arguments for membership");
+        }
+
         this.teamName = teamName;
         this.startDate = startDate;
         this.endDate = endDate;
     }
 
+    static boolean isValid(String teamName, int startDate, int endDate) {
+        return teamName != null && !teamName.isEmpty() && PackedDate.isValid(startDate) && PackedDate.isValid(endDate) && startDate <= endDate;
+    }
+
     public boolean isOverlapping(Membership other) {
-        return (startDate.compareTo(other.endDate) <= 0) && (endDate.compareTo(other.startDate) >= 0);
+        return startDate <= other.endDate && endDate >= other.startDate;
     }
 
     public int getMembershipDurationInDays() {
-        return startDate.differenceInDays(endDate);
+        return PackedDate.differenceInDays(startDate, endDate);
     }
     public boolean equalsTeamName(String otherTeamName) {
         return this.teamName.equals(otherTeamName);
     }
-}
 
+    public String getTeamName() {
+        return teamName;
+    }
+
+    public Date getStartDate() {
+        return Date.fromPacked(startDate);
+    }
+
+    public Date getEndDate() {
+        return Date.fromPacked(endDate);
+    }
+
+    int getPackedStartDate() {
+        return startDate;
+    }
+
+    int getPackedEndDate() {
+        return endDate;
+    }
+
+    /**
+     * The membership in the CSV column order: team, start day/month/year, end day/month/year.
+     */
+    @Override
+    public String toString() {
+        return teamName + "," + PackedDate.toString(startDate).replace('/', ',') + "," + PackedDate.toString(endDate).replace('/', ',');
+    }
+}
@@ -0,0 +1,123 @@
+package org.example;
+
+import com.opencsv.CSVParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Every player's membership history from one pass over the CSV file, plus a
+ * {@code player -> team -> total days} index kept up to date as rows are added.
+ */
+class MembershipIndex implements MembershipQueries {
+    private final Map<String, Player> players = new HashMap<>();
+    private final Map<String, Map<String, Integer>> totalDays = new HashMap<>();
+    private final Map<String, Integer> teamTotals = new HashMap<>();
+
+    public static MembershipIndex load(String csvFile) throws IOException {
+        return load(csvFile, new IngestStats());
+    }
+
+    public static MembershipIndex load(String csvFile, IngestStats stats) throws IOException {
+        long start = System.nanoTime();
+        MembershipIndex index = new MembershipIndex();
+        MembershipRowParser parser = new MembershipRowParser();
+        CSVParser csvParser = new CSVParser();
+        try (BufferedReader reader = Files.newBufferedReader(Path.of(csvFile), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int status;
+                try {
+                    status = parser.parse(csvParser.parseLine(line));
+                } catch (IOException e) {
+                    // Unterminated quote; reject this row instead of reading on into the next ones
+                    status = IngestStats.MALFORMED_LINE;
+                }
+                if (status == IngestStats.OK) {
+                    long aggregateStart = System.nanoTime();
+                    if (!index.tryAddMembership(parser.getPlayerName(), parser.getMembership()))
+                        status = IngestStats.OVERLAP;
+                    stats.addAggregateTime(System.nanoTime() - aggregateStart);
+                }
+                if (status == IngestStats.OK)
+                    stats.accepted();
+                else
+                    stats.rejected(status, line);
+            }
+        }
+        stats.addTotalTime(System.nanoTime() - start);
+        return index;
+    }
+
+    public void addMembership(String playerName, Membership membership) {
+        if (!tryAddMembership(playerName, membership))
+            throw new IllegalArgumentException("New membership overlaps with existing membership");
+    }
+
+    /**
+     * Adds the membership unless it overlaps one the player already has on the same team;
+     * never throws for overlaps.
+     */
+    public boolean tryAddMembership(String playerName, Membership membership) {
+        Player player = players.get(playerName);
+        if (player == null) {
+            player = new Player(playerName);
+            players.put(playerName, player);
+        }
+        if (!player.tryAddMembership(membership))
+            return false;
+
+        int days = membership.getMembershipDurationInDays();
+        totalDays.computeIfAbsent(playerName, k -> new HashMap<>()).merge(membership.getTeamName(), days, Integer::sum);
+        teamTotals.merge(membership.getTeamName(), days, Integer::sum);
+        return true;
+    }
+
+    @Override
+    public int getTotalMembershipDays(String playerName, String teamName) {
+        Map<String, Integer> teams = totalDays.get(playerName);
+        if (teams == null)
+            return 0;
+        return teams.getOrDefault(teamName, 0);
+    }
+
+    public Map<String, Integer> getTotalsByTeam(String playerName) {
+        return Collections.unmodifiableMap(totalDays.getOrDefault(playerName, Collections.emptyMap()));
+    }
+
+    @Override
+    public Map<String, Integer> getTeamTotals() {
+        return Collections.unmodifiableMap(new TreeMap<>(teamTotals));
+    }
+
+    @Override
+    public List<Map.Entry<String, Integer>> getTopPlayers(String teamName, int n) {
+        TopPlayers top = new TopPlayers(n);
+        for (Map.Entry<String, Map<String, Integer>> entry : totalDays.entrySet()) {
+            Integer days = entry.getValue().get(teamName);
+            if (days != null)
+                top.offer(entry.getKey(), days);
+        }
+        return top.toList();
+    }
+
+    public Player getPlayer(String playerName) {
+        return players.get(playerName);
+    }
+
+    public Iterable<Player> getPlayers() {
+        return Collections.unmodifiableCollection(players.values());
+    }
+
+    public int getPlayerCount() {
+        return players.size();
+    }
+}
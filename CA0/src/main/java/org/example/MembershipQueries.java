@@ -0,0 +1,21 @@
+package org.example;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Questions Main can answer about a loaded membership history.
+ */
+interface MembershipQueries {
+    int getTotalMembershipDays(String playerName, String teamName);
+
+    /**
+     * Total membership days of every player on every team, by team name.
+     */
+    Map<String, Integer> getTeamTotals();
+
+    /**
+     * The {@code n} players with the most days on {@code teamName}, longest first.
+     */
+    List<Map.Entry<String, Integer>> getTopPlayers(String teamName, int n);
+}
@@ -0,0 +1,84 @@
+package org.example;
+
+/**
+ * Turns the fields of one CSV row into a player name and {@link Membership}, reporting
+ * problems as {@link IngestStats} status codes instead of exceptions.
+ */
+class MembershipRowParser {
+    private static final int FIELDS = 8;
+    private static final int BAD_NUMBER = Integer.MIN_VALUE;
+
+    private final int[] values = new int[6];
+    private String playerName;
+    private Membership membership;
+
+    /**
+     * Returns {@link IngestStats#OK} and makes the row available through the getters,
+     * or returns the reason the row was rejected.
+     */
+    int parse(String[] fields) {
+        membership = null;
+        if (fields.length < FIELDS)
+            return IngestStats.MISSING_FIELDS;
+
+        for (int i = 0; i < values.length; i++) {
+            values[i] = parseInt(fields[i + 2]);
+            if (values[i] == BAD_NUMBER)
+                return IngestStats.BAD_NUMBER;
+        }
+        return build(fields[0], fields[1], values[0], values[1], values[2], values[3], values[4], values[5]);
+    }
+
+    int build(String playerName, String teamName, int startDay, int startMonth, int startYear, int endDay, int endMonth, int endYear) {
+        membership = null;
+        if (!PackedDate.isValid(startDay, startMonth, startYear) || !PackedDate.isValid(endDay, endMonth, endYear))
+            return IngestStats.INVALID_DATE;
+
+        int startDate = PackedDate.pack(startDay, startMonth, startYear);
+        int endDate = PackedDate.pack(endDay, endMonth, endYear);
+        if (playerName == null || playerName.isEmpty() || !Membership.isValid(teamName, startDate, endDate))
+            return IngestStats.INVALID_MEMBERSHIP;
+
+        this.playerName = playerName;
+        this.membership = new Membership(teamName, startDate, endDate);
+        return IngestStats.OK;
+    }
+
+    String getPlayerName() {
+        return playerName;
+    }
+
+    Membership getMembership() {
+        return membership;
+    }
+
+    /**
+     * Same accepted syntax as {@link Integer#parseInt(String)}, without throwing.
+     */
+    private static int parseInt(String text) {
+        int length = text.length();
+        if (length == 0)
+            return BAD_NUMBER;
+        int i = 0;
+        boolean negative = false;
+        char first = text.charAt(0);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++i == length)
+                return BAD_NUMBER;
+        }
+        long value = 0;
+        for (; i < length; i++) {
+            int digit = Character.digit(text.charAt(i), 10);
+            if (digit < 0)
+                return BAD_NUMBER;
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE + 1L)
+                return BAD_NUMBER;
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE || value == BAD_NUMBER)
+            return BAD_NUMBER;
+        return (int) value;
+    }
+}
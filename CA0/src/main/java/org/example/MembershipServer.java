@@ -0,0 +1,170 @@
+package org.example;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the membership data loaded and answers line-based queries, either on
+ * stdin/stdout or on a loopback TCP port. The file is checked every few seconds
+ * and reloaded in the background when it changes; queries keep using the previous
+ * data until the new one is ready.
+ * <p>
+ * Requests are whitespace-separated and answered with one line, {@code OK <result>}
+ * or {@code ERR <message>}:
+ * <pre>
+ * TOTAL player team [from to]   days on the team, optionally only within [from, to]
+ * ROSTER team date              players on the team on that date
+ * HEADCOUNT team date           number of players on the team on that date
+ * QUIT                          close the connection
+ * </pre>
+ * Dates are written {@code day/month/year}.
+ */
+class MembershipServer implements AutoCloseable {
+    private static final long RELOAD_CHECK_SECONDS = 2;
+
+    private final Path csvFile;
+    private final ScheduledExecutorService reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "membership-reloader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Data data;
+
+    public MembershipServer(Path csvFile) throws IOException {
+        this.csvFile = csvFile;
+        this.data = Data.load(csvFile);
+        reloader.scheduleWithFixedDelay(this::reloadIfChanged, RELOAD_CHECK_SECONDS, RELOAD_CHECK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void serve(BufferedReader in, PrintWriter out) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.trim().equalsIgnoreCase("QUIT"))
+                break;
+            out.println(handle(line));
+            out.flush();
+        }
+    }
+
+    public void serve(int port) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.out.println("Listening on " + serverSocket.getLocalSocketAddress());
+            serve(serverSocket);
+        }
+    }
+
+    public void serve(ServerSocket serverSocket) throws IOException {
+        ExecutorService connections = Executors.newCachedThreadPool();
+        try {
+            while (true) {
+                Socket socket = serverSocket.accept();
+                connections.execute(() -> serveConnection(socket));
+            }
+        } finally {
+            connections.shutdownNow();
+        }
+    }
+
+    private void serveConnection(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            socket.setTcpNoDelay(true);
+            serve(in, out);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public String handle(String request) {
+        String[] parts = request.trim().split("\\s+");
+        Data current = data;
+        try {
+            switch (parts[0].toUpperCase()) {
+                case "TOTAL":
+                    if (parts.length == 3)
+                        return "OK " + current.index.getTotalMembershipDays(parts[1], parts[2]);
+                    if (parts.length == 5) {
+                        Player player = current.index.getPlayer(parts[1]);
+                        return "OK " + (player == null ? 0 : player.getTotalMembershipDays(parts[2], Date.parse(parts[3]), Date.parse(parts[4])));
+                    }
+                    return "ERR usage: TOTAL player team [from to]";
+                case "ROSTER":
+                    if (parts.length != 3)
+                        return "ERR usage: ROSTER team date";
+                    List<String> roster = current.rosters().getRoster(parts[1], Date.parse(parts[2]));
+                    return "OK " + String.join(" ", roster);
+                case "HEADCOUNT":
+                    if (parts.length != 3)
+                        return "ERR usage: HEADCOUNT team date";
+                    return "OK " + current.rosters().getHeadcount(parts[1], Date.parse(parts[2]));
+                default:
+                    return "ERR unknown command " + parts[0];
+            }
+        } catch (IllegalArgumentException e) {
+            return "ERR " + e.getMessage();
+        }
+    }
+
+    private void reloadIfChanged() {
+        try {
+            if (Files.size(csvFile) == data.size && Files.getLastModifiedTime(csvFile).equals(data.modified))
+                return;
+            data = Data.load(csvFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void close() {
+        reloader.shutdownNow();
+    }
+
+    private static class Data {
+        final MembershipIndex index;
+        final long size;
+        final FileTime modified;
+        private volatile RosterIndex rosters;
+
+        private Data(MembershipIndex index, long size, FileTime modified) {
+            this.index = index;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        static Data load(Path csvFile) throws IOException {
+            // Read the file's stamp first, so a change during loading triggers another reload
+            long size = Files.size(csvFile);
+            FileTime modified = Files.getLastModifiedTime(csvFile);
+            return new Data(MappedCsvParser.load(csvFile.toString()), size, modified);
+        }
+
+        RosterIndex rosters() {
+            RosterIndex result = rosters;
+            if (result == null) {
+                synchronized (this) {
+                    result = rosters;
+                    if (result == null)
+                        rosters = result = new RosterIndex(index);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package org.example;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Read-only, memory-mapped view of a binary membership snapshot.
+ * <p>
+ * Layout (big-endian): magic, version, the player and team dictionaries as
+ * length-prefixed UTF-8 names, the row count, then four int columns: the first row
+ * of each player ({@code players + 1} entries), and team id, start epoch day and end
+ * epoch day per row. Rows are grouped by player and ordered by start date.
+ */
+class MembershipSnapshot implements MembershipQueries {
+    private static final int MAGIC = 0x4D534E50; // "MSNP"
+    private static final int VERSION = 1;
+
+    private final String[] playerNames;
+    private final Map<String, Integer> playerIds;
+    private final String[] teamNames;
+    private final Map<String, Integer> teamIds;
+    private final IntBuffer playerRows;
+    private final IntBuffer teams;
+    private final IntBuffer startDays;
+    private final IntBuffer endDays;
+
+    private MembershipSnapshot(MappedByteBuffer buffer) {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+            throw new IllegalArgumentException("Not a membership snapshot");
+
+        playerNames = readNames(buffer);
+        playerIds = idsOf(playerNames);
+        teamNames = readNames(buffer);
+        teamIds = idsOf(teamNames);
+
+        int rows = buffer.getInt();
+        playerRows = column(buffer, playerNames.length + 1);
+        teams = column(buffer, rows);
+        startDays = column(buffer, rows);
+        endDays = column(buffer, rows);
+    }
+
+    public static MembershipSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new MembershipSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static void write(MembershipIndex index, Path file) throws IOException {
+        List<String> playerNames = new ArrayList<>();
+        List<String> teamNames = new ArrayList<>();
+        Map<String, Integer> teamIds = new HashMap<>();
+        List<Membership> rows = new ArrayList<>();
+        List<Integer> playerRows = new ArrayList<>();
+
+        for (Player player : index.getPlayers()) {
+            playerNames.add(player.getPlayerName());
+            playerRows.add(rows.size());
+            for (Membership membership : player.getMemberships()) {
+                if (!teamIds.containsKey(membership.getTeamName())) {
+                    teamIds.put(membership.getTeamName(), teamNames.size());
+                    teamNames.add(membership.getTeamName());
+                }
+                rows.add(membership);
+            }
+        }
+        playerRows.add(rows.size());
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeNames(out, playerNames);
+            writeNames(out, teamNames);
+
+            out.writeInt(rows.size());
+            for (int row : playerRows)
+                out.writeInt(row);
+            for (Membership membership : rows)
+                out.writeInt(teamIds.get(membership.getTeamName()));
+            for (Membership membership : rows)
+                out.writeInt(Math.toIntExact(PackedDate.toEpochDay(membership.getPackedStartDate())));
+            for (Membership membership : rows)
+                out.writeInt(Math.toIntExact(PackedDate.toEpochDay(membership.getPackedEndDate())));
+        }
+    }
+
+    /**
+     * Rebuilds the full {@link Player}/{@link Membership} model from the snapshot.
+     */
+    public MembershipIndex toIndex() {
+        MembershipIndex index = new MembershipIndex();
+        for (int player = 0; player < playerNames.length; player++) {
+            for (int row = playerRows.get(player); row < playerRows.get(player + 1); row++) {
+                Membership membership = new Membership(teamNames[teams.get(row)],
+                        PackedDate.ofEpochDay(startDays.get(row)), PackedDate.ofEpochDay(endDays.get(row)));
+                index.addMembership(playerNames[player], membership);
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public int getTotalMembershipDays(String playerName, String teamName) {
+        Integer player = playerIds.get(playerName);
+        Integer team = teamIds.get(teamName);
+        if (player == null || team == null)
+            return 0;
+        return Math.max(0, totalDays(player, team));
+    }
+
+    @Override
+    public Map<String, Integer> getTeamTotals() {
+        int[] totals = new int[teamNames.length];
+        for (int row = 0; row < teams.limit(); row++)
+            totals[teams.get(row)] += endDays.get(row) - startDays.get(row);
+
+        Map<String, Integer> result = new TreeMap<>();
+        for (int team = 0; team < totals.length; team++)
+            result.put(teamNames[team], totals[team]);
+        return result;
+    }
+
+    @Override
+    public List<Map.Entry<String, Integer>> getTopPlayers(String teamName, int n) {
+        TopPlayers top = new TopPlayers(n);
+        Integer team = teamIds.get(teamName);
+        if (team == null)
+            return top.toList();
+        for (int player = 0; player < playerNames.length; player++) {
+            int days = totalDays(player, team);
+            if (days >= 0)
+                top.offer(playerNames[player], days);
+        }
+        return top.toList();
+    }
+
+    public int getPlayerCount() {
+        return playerNames.length;
+    }
+
+    public int getRowCount() {
+        return teams.limit();
+    }
+
+    /**
+     * Days {@code player} spent on {@code team}, or -1 if they were never a member.
+     */
+    private int totalDays(int player, int team) {
+        int total = -1;
+        for (int row = playerRows.get(player); row < playerRows.get(player + 1); row++) {
+            if (teams.get(row) == team)
+                total = Math.max(total, 0) + endDays.get(row) - startDays.get(row);
+        }
+        return total;
+    }
+
+    private static void writeNames(DataOutputStream out, List<String> names) throws IOException {
+        out.writeInt(names.size());
+        for (String name : names) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String[] readNames(MappedByteBuffer buffer) {
+        String[] names = new String[buffer.getInt()];
+        for (int i = 0; i < names.length; i++) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            names[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return names;
+    }
+
+    private static Map<String, Integer> idsOf(String[] names) {
+        Map<String, Integer> ids = new HashMap<>(names.length * 2);
+        for (int i = 0; i < names.length; i++)
+            ids.put(names[i], i);
+        return ids;
+    }
+
+    private static IntBuffer column(MappedByteBuffer buffer, int length) {
+        IntBuffer column = buffer.slice(buffer.position(), length * Integer.BYTES).asIntBuffer();
+        buffer.position(buffer.position() + length * Integer.BYTES);
+        return column;
+    }
+}
@@ -0,0 +1,186 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compact alternative to {@link MembershipIndex}: team names are stored once in a
+ * dictionary, and each player's history is three parallel {@code int[]} columns
+ * (team id, start epoch day, end epoch day) ordered by start day.
+ */
+class MembershipStore implements MembershipQueries {
+    private final Map<String, Integer> teamIds = new HashMap<>();
+    private final List<String> teamNames = new ArrayList<>();
+    private final Map<String, Integer> playerIds = new HashMap<>();
+    private final List<String> playerNames = new ArrayList<>();
+    private final List<Columns> histories = new ArrayList<>();
+    private int[] teamTotals = new int[16];
+
+    public static MembershipStore load(String csvFile) throws IOException {
+        return load(csvFile, new IngestStats());
+    }
+
+    public static MembershipStore load(String csvFile, IngestStats stats) throws IOException {
+        long start = System.nanoTime();
+        MembershipStore store = new MembershipStore();
+        try (FileChannel channel = FileChannel.open(Path.of(csvFile), StandardOpenOption.READ)) {
+            new MappedCsvParser(stats).parse(channel, 0, channel.size(), store::tryAddMembership);
+        }
+        stats.addTotalTime(System.nanoTime() - start);
+        return store;
+    }
+
+    public boolean tryAddMembership(String playerName, Membership membership) {
+        return tryAdd(playerName, membership.getTeamName(),
+                Math.toIntExact(PackedDate.toEpochDay(membership.getPackedStartDate())),
+                Math.toIntExact(PackedDate.toEpochDay(membership.getPackedEndDate())));
+    }
+
+    /**
+     * Same contract as {@link Player#addMembership}: throws if the new interval overlaps one
+     * already recorded for the player on the same team.
+     */
+    public void add(String playerName, String teamName, int startDay, int endDay) {
+        if (!tryAdd(playerName, teamName, startDay, endDay))
+            throw new IllegalArgumentException("New membership overlaps with existing membership");
+    }
+
+    /**
+     * Like {@link #add}, but returns false instead of throwing on overlap.
+     */
+    public boolean tryAdd(String playerName, String teamName, int startDay, int endDay) {
+        if (playerName == null || playerName.isEmpty())
+            throw new IllegalArgumentException("Player name cannot be empty");
+        if (teamName == null || teamName.isEmpty() || startDay > endDay)
+            throw new IllegalArgumentException("Invalid arguments for membership");
+
+        Integer player = playerIds.get(playerName);
+        Columns history = player == null ? new Columns() : histories.get(player);
+        Integer knownTeam = teamIds.get(teamName);
+        if (knownTeam != null && history.overlaps(knownTeam, startDay, endDay))
+            return false;
+
+        if (player == null) {
+            playerIds.put(playerName, histories.size());
+            playerNames.add(playerName);
+            histories.add(history);
+        }
+        int team = teamId(teamName);
+        history.insert(history.insertionPoint(startDay), team, startDay, endDay);
+        teamTotals[team] += endDay - startDay;
+        return true;
+    }
+
+    @Override
+    public int getTotalMembershipDays(String playerName, String teamName) {
+        Integer player = playerIds.get(playerName);
+        Integer team = teamIds.get(teamName);
+        if (player == null || team == null)
+            return 0;
+        return Math.max(0, histories.get(player).totalDays(team));
+    }
+
+    @Override
+    public Map<String, Integer> getTeamTotals() {
+        Map<String, Integer> result = new TreeMap<>();
+        for (int team = 0; team < teamNames.size(); team++)
+            result.put(teamNames.get(team), teamTotals[team]);
+        return result;
+    }
+
+    @Override
+    public List<Map.Entry<String, Integer>> getTopPlayers(String teamName, int n) {
+        TopPlayers top = new TopPlayers(n);
+        Integer team = teamIds.get(teamName);
+        if (team == null)
+            return top.toList();
+        for (int player = 0; player < histories.size(); player++) {
+            int days = histories.get(player).totalDays(team);
+            if (days >= 0)
+                top.offer(playerNames.get(player), days);
+        }
+        return top.toList();
+    }
+
+    public int getPlayerCount() {
+        return histories.size();
+    }
+
+    private int teamId(String teamName) {
+        Integer team = teamIds.get(teamName);
+        if (team != null)
+            return team;
+        team = teamNames.size();
+        teamIds.put(teamName, team);
+        teamNames.add(teamName);
+        if (team == teamTotals.length)
+            teamTotals = Arrays.copyOf(teamTotals, team * 2);
+        return team;
+    }
+
+    private static class Columns {
+        private int size;
+        private int[] teams = new int[4];
+        private int[] starts = new int[4];
+        private int[] ends = new int[4];
+
+        /**
+         * Index of the first membership starting after {@code startDay}.
+         */
+        int insertionPoint(int startDay) {
+            if (size == 0 || starts[size - 1] < startDay)
+                return size;
+            int position = Arrays.binarySearch(starts, 0, size, startDay);
+            return position >= 0 ? position + 1 : -position - 1;
+        }
+
+        /**
+         * Whether {@code [startDay, endDay]} overlaps a membership of {@code team}. Different
+         * teams may overlap, so ends are not ordered and every row starting by {@code endDay}
+         * is checked.
+         */
+        boolean overlaps(int team, int startDay, int endDay) {
+            for (int i = 0; i < size && starts[i] <= endDay; i++) {
+                if (teams[i] == team && ends[i] >= startDay)
+                    return true;
+            }
+            return false;
+        }
+
+        void insert(int position, int team, int startDay, int endDay) {
+            if (size == starts.length) {
+                teams = Arrays.copyOf(teams, size * 2);
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            int tail = size - position;
+            System.arraycopy(teams, position, teams, position + 1, tail);
+            System.arraycopy(starts, position, starts, position + 1, tail);
+            System.arraycopy(ends, position, ends, position + 1, tail);
+            teams[position] = team;
+            starts[position] = startDay;
+            ends[position] = endDay;
+            size++;
+        }
+
+        /**
+         * Days spent on {@code team}, or -1 if the player was never a member.
+         */
+        int totalDays(int team) {
+            int total = -1;
+            for (int i = 0; i < size; i++) {
+                if (teams[i] == team)
+                    total = Math.max(total, 0) + ends[i] - starts[i];
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows an append-only membership CSV. Each {@link #poll()} parses only the complete
+ * lines written since the last one and adds them to the same {@link MembershipIndex},
+ * so the work done is proportional to the appended bytes. A final row without a newline
+ * may still be being written, so only {@link #flush()} and {@link #close()} apply it.
+ * If the file shrinks it is treated as replaced and loaded again from the start.
+ */
+class MembershipWatcher implements AutoCloseable {
+    private final Path file;
+    private final WatchService watchService;
+    private final IngestStats stats = new IngestStats();
+    private final MappedCsvParser parser = new MappedCsvParser(stats);
+    private MembershipIndex index = new MembershipIndex();
+    private Map<String, Set<String>> changes = new TreeMap<>();
+    private long offset;
+    private boolean afterPartialLine;
+
+    public MembershipWatcher(Path file) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+        poll();
+        changes.clear();
+    }
+
+    public MembershipIndex getIndex() {
+        return index;
+    }
+
+    public IngestStats getStats() {
+        return stats;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Players added to since the initial load or the last call, by team, or null if the file was replaced
+     * and every result may have changed.
+     */
+    public Map<String, Set<String>> takeChanges() {
+        Map<String, Set<String>> taken = changes;
+        changes = new TreeMap<>();
+        return taken;
+    }
+
+    /**
+     * Applies rows appended since the last call; returns the number of bytes consumed.
+     */
+    public long poll() throws IOException {
+        return poll(false);
+    }
+
+    /**
+     * Like {@link #poll()}, but also applies a final row that has no newline. Call it once
+     * the writer is done, e.g. at the end of a one-shot run.
+     */
+    public long flush() throws IOException {
+        return poll(true);
+    }
+
+    private long poll(boolean includePartialLine) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = offset;
+            if (size < offset) {
+                index = new MembershipIndex();
+                changes = null;
+                start = 0;
+                offset = 0;
+                afterPartialLine = false;
+            }
+            if (afterPartialLine && size > offset) {
+                // The newline ending a row that was already applied without one
+                offset += lineBreakLength(channel, offset, size);
+                afterPartialLine = false;
+            }
+            long end = includePartialLine ? size : lastLineEnd(channel, offset, size);
+            if (end > offset) {
+                parser.parse(channel, offset, end, this::add);
+                afterPartialLine = includePartialLine && !endsWithNewline(channel, end);
+                offset = end;
+            }
+            return offset - start;
+        }
+    }
+
+    private boolean add(String playerName, Membership membership) {
+        if (!index.tryAddMembership(playerName, membership))
+            return false;
+        if (changes != null)
+            changes.computeIfAbsent(membership.getTeamName(), team -> new TreeSet<>()).add(playerName);
+        return true;
+    }
+
+    /**
+     * Blocks until the file may have changed or {@code timeoutMillis} passes, then polls.
+     * The timeout doubles as a polling fallback where file events are unreliable.
+     */
+    public long awaitChanges(long timeoutMillis) throws IOException, InterruptedException {
+        WatchKey key = watchService.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (key != null) {
+            key.pollEvents();
+            key.reset();
+        }
+        return poll();
+    }
+
+    /**
+     * Applies a trailing row without a newline, then stops watching.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            watchService.close();
+        }
+    }
+
+    private static boolean endsWithNewline(FileChannel channel, long end) throws IOException {
+        return end > 0 && byteAt(channel, end - 1) == '\n';
+    }
+
+    /**
+     * Length of the {@code \n} or {@code \r\n} at {@code position}, or 0 if there is none.
+     */
+    private static int lineBreakLength(FileChannel channel, long position, long size) throws IOException {
+        int first = byteAt(channel, position);
+        if (first == '\n')
+            return 1;
+        if (first == '\r' && position + 1 < size && byteAt(channel, position + 1) == '\n')
+            return 2;
+        return 0;
+    }
+
+    private static int byteAt(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        return channel.read(buffer, position) == 1 ? buffer.get(0) : -1;
+    }
+
+    /**
+     * Position just after the last newline in {@code [from, size)}, or {@code from} if there is none.
+     */
+    private static long lastLineEnd(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long blockEnd = size;
+        while (blockEnd > from) {
+            long blockStart = Math.max(from, blockEnd - buffer.capacity());
+            buffer.clear().limit((int) (blockEnd - blockStart));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, blockStart + buffer.position()) < 0)
+                    break;
+            }
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n')
+                    return blockStart + i + 1;
+            }
+            blockEnd = blockStart;
+        }
+        return from;
+    }
+}
@@ -0,0 +1,147 @@
+package org.example;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.stream.IntStream;
+
+/**
+ * Static helpers for dates packed into a single {@code int} as
+ * {@code year << 9 | month << 5 | day}. Packed values sort in calendar order,
+ * so they can be compared directly without creating {@link Date} instances.
+ */
+final class PackedDate {
+    static final int MAX_YEAR = (1 << 22) - 1;
+
+    private PackedDate() {
+    }
+
+    /**
+     * Packs a date, rejecting invalid ones and years past {@link #MAX_YEAR}, which the
+     * packed form cannot hold; {@link Date} itself has no such limit.
+     */
+    static int of(int day, int month, int year) {
+        if (!isValid(day, month, year))
+            throw new IllegalArgumentException("Invalid date");
+        return pack(day, month, year);
+    }
+
+    /**
+     * Packs fields already known to be a valid day and month; only the year range is checked
+     * here, since a year past {@link #MAX_YEAR} would silently wrap.
+     */
+    static int pack(int day, int month, int year) {
+        if (year < 0 || year > MAX_YEAR)
+            throw new IllegalArgumentException("Year out of range: " + year);
+        return year << 9 | month << 5 | day;
+    }
+
+    static int day(int packed) {
+        return packed & 0x1F;
+    }
+
+    static int month(int packed) {
+        return (packed >>> 5) & 0xF;
+    }
+
+    static int year(int packed) {
+        return packed >>> 9;
+    }
+
+    static boolean isValid(int day, int month, int year) {
+        return year >= 0 && year <= MAX_YEAR && month >= 1 && month <= 12
+                && day >= 1 && day <= Date.daysOfMonth(month, year);
+    }
+
+    static boolean isValid(int packed) {
+        return isValid(day(packed), month(packed), year(packed));
+    }
+
+    static int compare(int a, int b) {
+        return Integer.compare(a, b);
+    }
+
+    static long toEpochDay(int packed) {
+        return Date.epochDay(day(packed), month(packed), year(packed));
+    }
+
+    static int ofEpochDay(long epochDay) {
+        return Date.packedOfEpochDay(epochDay);
+    }
+
+    static int differenceInDays(int from, int to) {
+        return Math.toIntExact(toEpochDay(to) - toEpochDay(from));
+    }
+
+    static int nextDay(int packed) {
+        int d = day(packed);
+        int m = month(packed);
+        int y = year(packed);
+
+        if (d < Date.daysOfMonth(m, y))
+            return packed + 1;
+        if (m < 12)
+            return pack(1, m + 1, y);
+        return pack(1, 1, y + 1);
+    }
+
+    static int previousDay(int packed) {
+        int d = day(packed);
+        int m = month(packed);
+        int y = year(packed);
+
+        if (d > 1)
+            return packed - 1;
+        if (m > 1)
+            return pack(Date.daysOfMonth(m - 1, y), m - 1, y);
+        if (y == 0)
+            throw new IllegalArgumentException("No day before 1/1/0");
+        return pack(Date.daysOfMonth(12, y - 1), 12, y - 1);
+    }
+
+    /**
+     * Every day in {@code [start, end]} in order, without boxing or {@link Date} allocation.
+     */
+    static IntStream range(int start, int end) {
+        // Stepping past end instead of calling nextDay on it also ends a range at MAX_YEAR.
+        return IntStream.iterate(start, d -> d <= end, d -> d < end ? nextDay(d) : end + 1);
+    }
+
+    static Cursor cursor(int start, int end) {
+        return new Cursor(start, end);
+    }
+
+    static String toString(int packed) {
+        return day(packed) + "/" + month(packed) + "/" + year(packed);
+    }
+
+    /**
+     * Reusable iterator over {@code [start, end]}; {@link #nextInt()} does not allocate.
+     */
+    static final class Cursor implements PrimitiveIterator.OfInt {
+        private int next;
+        private int end;
+
+        private Cursor(int start, int end) {
+            reset(start, end);
+        }
+
+        void reset(int start, int end) {
+            this.next = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next <= end;
+        }
+
+        @Override
+        public int nextInt() {
+            if (next > end)
+                throw new NoSuchElementException();
+            int current = next;
+            next = current < end ? nextDay(current) : end + 1;
+            return current;
+        }
+    }
+}
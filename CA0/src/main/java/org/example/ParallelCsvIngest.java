@@ -0,0 +1,164 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Loads a membership CSV by splitting it into line-aligned chunks that are parsed
+ * with {@link MappedCsvParser} on a {@link ForkJoinPool}. Chunks only collect memberships per player; overlap
+ * checks run once the partials are merged back in file order, so the result is
+ * the same as {@link MembershipIndex#load(String)}. Quoted fields spanning several
+ * lines are not supported.
+ */
+class ParallelCsvIngest {
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+    private static final int MAX_CHUNK_SIZE = 64 << 20;
+
+    public static MembershipIndex load(String csvFile, int parallelism) throws IOException {
+        return load(csvFile, parallelism, new IngestStats());
+    }
+
+    public static MembershipIndex load(String csvFile, int parallelism, IngestStats stats) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(Path.of(csvFile), StandardOpenOption.READ)) {
+            long[] boundaries = chunkBoundaries(channel, parallelism);
+
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            PartialHistory merged;
+            try {
+                merged = pool.invoke(new ChunkTask(channel, boundaries, 0, boundaries.length - 1, stats.getSink()));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                pool.shutdown();
+            }
+            stats.merge(merged.stats);
+
+            long aggregateStart = System.nanoTime();
+            MembershipIndex index = new MembershipIndex();
+            for (Map.Entry<String, List<Membership>> player : merged.memberships.entrySet()) {
+                for (Membership membership : player.getValue()) {
+                    if (!index.tryAddMembership(player.getKey(), membership))
+                        stats.rejectedLater(IngestStats.OVERLAP, player.getKey() + "," + membership);
+                }
+            }
+            stats.addAggregateTime(System.nanoTime() - aggregateStart);
+            stats.addTotalTime(System.nanoTime() - start);
+            return index;
+        }
+    }
+
+    /**
+     * Chunk start offsets followed by the file size; every start is 0 or just after a newline.
+     */
+    static long[] chunkBoundaries(FileChannel channel, int parallelism) throws IOException {
+        long size = channel.size();
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, size / (parallelism * 4L)));
+
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long position = chunkSize;
+        while (position < size) {
+            long lineStart = nextLineStart(channel, position, buffer);
+            if (lineStart >= size)
+                break;
+            boundaries.add(lineStart);
+            position = lineStart + chunkSize;
+        }
+        boundaries.add(size);
+
+        long[] result = new long[boundaries.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = boundaries.get(i);
+        return result;
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                return channel.size();
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n')
+                    return position + i + 1;
+            }
+            position += read;
+        }
+    }
+
+    private static PartialHistory parseChunk(FileChannel channel, long start, long end, RejectSink sink) throws IOException {
+        PartialHistory partial = new PartialHistory(new IngestStats(sink));
+        new MappedCsvParser(partial.stats).parse(channel, start, end, partial::add);
+        return partial;
+    }
+
+    /**
+     * Memberships per player in file order, not yet checked for overlaps, and the
+     * parse statistics of the chunks they came from.
+     */
+    static class PartialHistory {
+        private final Map<String, List<Membership>> memberships = new LinkedHashMap<>();
+        private final IngestStats stats;
+
+        PartialHistory(IngestStats stats) {
+            this.stats = stats;
+        }
+
+        boolean add(String playerName, Membership membership) {
+            memberships.computeIfAbsent(playerName, k -> new ArrayList<>()).add(membership);
+            return true;
+        }
+
+        PartialHistory merge(PartialHistory later) {
+            for (Map.Entry<String, List<Membership>> player : later.memberships.entrySet())
+                memberships.computeIfAbsent(player.getKey(), k -> new ArrayList<>()).addAll(player.getValue());
+            stats.merge(later.stats);
+            return this;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static class ChunkTask extends RecursiveTask<PartialHistory> {
+        private final FileChannel channel;
+        private final long[] boundaries;
+        private final int from;
+        private final int to;
+        private final RejectSink sink;
+
+        ChunkTask(FileChannel channel, long[] boundaries, int from, int to, RejectSink sink) {
+            this.channel = channel;
+            this.boundaries = boundaries;
+            this.from = from;
+            this.to = to;
+            this.sink = sink;
+        }
+
+        @Override
+        protected PartialHistory compute() {
+            if (to - from == 1) {
+                try {
+                    return parseChunk(channel, boundaries[from], boundaries[to], sink);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            int mid = (from + to) >>> 1;
+            ChunkTask left = new ChunkTask(channel, boundaries, from, mid, sink);
+            ChunkTask right = new ChunkTask(channel, boundaries, mid, to, sink);
+            right.fork();
+            return left.compute().merge(right.join());
+        }
+    }
+}
@@ -1,31 +1,108 @@
 package org.example;
 import java.util.ArrayList;
-import java.util.stream.*;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 class Player {
+    private static final Comparator<Membership> BY_START_DATE = Comparator.comparingInt(Membership::getPackedStartDate);
+
     private String playerName;
-    private ArrayList<Membership> membershipHistory;
+    // One history per team. A team's memberships never overlap, so ordering them by start
+    // date also orders them by end date.
+    private Map<String, TreeMap<Integer, Membership>> membershipHistory;
 
     public Player(String playerName) {
         if (playerName == null || playerName.isEmpty()) {
             throw new IllegalArgumentException("Player name cannot be empty");
         }
         this.playerName = playerName;
-        this.membershipHistory = new ArrayList<>();
+        this.membershipHistory = new HashMap<>();
     }
 
+    /**
+     * Adds the membership; throws if it overlaps one the player already has on the same team.
+     * Memberships of different teams may overlap.
+     */
     public void addMembership(Membership membership) {
-        for (Membership existingMembership : membershipHistory) {
-            if (existingMembership.isOverlapping(membership)) {
-                throw new IllegalArgumentException("New membership overlaps with existing membership");
-            }
+        if (!tryAddMembership(membership)) {
+            throw new IllegalArgumentException("New membership overlaps with existing membership");
         }
-        membershipHistory.add(membership);
+    }
+
+    /**
+     * Like {@link #addMembership}, but returns false instead of throwing on overlap.
+     */
+    boolean tryAddMembership(Membership membership) {
+        TreeMap<Integer, Membership> team = membershipHistory.computeIfAbsent(membership.getTeamName(), k -> new TreeMap<>());
+        Map.Entry<Integer, Membership> before = team.floorEntry(membership.getPackedStartDate());
+        Map.Entry<Integer, Membership> after = team.ceilingEntry(membership.getPackedStartDate());
+        if ((before != null && before.getValue().isOverlapping(membership))
+                || (after != null && after.getValue().isOverlapping(membership))) {
+            return false;
+        }
+        team.put(membership.getPackedStartDate(), membership);
+        return true;
     }
     public int getTotalMembershipDays(String teamName) {
-        return membershipHistory.stream()
-                .filter(membership -> membership.equalsTeamName(teamName))
+        return membershipHistory.getOrDefault(teamName, new TreeMap<>()).values().stream()
                 .mapToInt(membership -> membership.getMembershipDurationInDays())
                 .sum();
     }
+
+    /**
+     * Days on {@code teamName} counting only the part of each membership inside {@code [from, to]}.
+     */
+    public int getTotalMembershipDays(String teamName, Date from, Date to) {
+        int total = 0;
+        for (Membership membership : getMembershipsIntersecting(from, to)) {
+            if (!membership.equalsTeamName(teamName))
+                continue;
+            int start = Math.max(membership.getPackedStartDate(), from.toPacked());
+            int end = Math.min(membership.getPackedEndDate(), to.toPackedBound());
+            total += PackedDate.differenceInDays(start, end);
+        }
+        return total;
+    }
+
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    public List<Membership> getMembershipsActiveOn(Date date) {
+        return getMembershipsIntersecting(date, date);
+    }
+
+    public List<Membership> getMembershipsIntersecting(Date from, Date to) {
+        if (from.compareTo(to) > 0)
+            throw new IllegalArgumentException("Invalid date range");
+        if (from.getYear() > PackedDate.MAX_YEAR)
+            return new ArrayList<>();
+        return getMembershipsIntersecting(from.toPacked(), to.toPackedBound());
+    }
+
+    List<Membership> getMembershipsIntersecting(int from, int to) {
+        List<Membership> result = new ArrayList<>();
+        for (TreeMap<Integer, Membership> team : membershipHistory.values()) {
+            Map.Entry<Integer, Membership> first = team.floorEntry(from);
+            if (first != null && first.getValue().getPackedEndDate() >= from)
+                result.add(first.getValue());
+            result.addAll(team.subMap(from, false, to, true).values());
+        }
+        result.sort(BY_START_DATE);
+        return result;
+    }
+
+    /**
+     * Every membership of the player, ordered by start date.
+     */
+    List<Membership> getMemberships() {
+        List<Membership> result = new ArrayList<>();
+        for (TreeMap<Integer, Membership> team : membershipHistory.values())
+            result.addAll(team.values());
+        result.sort(BY_START_DATE);
+        return result;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+package org.example;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes up to {@code maxRows} rejected rows to a file as {@code reason<TAB>row};
+ * later rejects are only counted. Safe to share between threads.
+ */
+class RejectSink implements AutoCloseable {
+    private final Path file;
+    private final BufferedWriter writer;
+    private final long maxRows;
+    private long written;
+    private long dropped;
+
+    RejectSink(Path file, long maxRows) throws IOException {
+        this.file = file;
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        this.maxRows = maxRows;
+    }
+
+    synchronized void write(int status, String row) {
+        if (written >= maxRows) {
+            dropped++;
+            return;
+        }
+        try {
+            writer.write(IngestStats.reason(status));
+            writer.write('\t');
+            writer.write(row);
+            writer.newLine();
+            written++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    synchronized long getDropped() {
+        return dropped;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
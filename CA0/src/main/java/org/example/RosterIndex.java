@@ -0,0 +1,162 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Point-in-time and time-series roster queries over a loaded {@link MembershipIndex}.
+ * Memberships are grouped by team; dates are inclusive at both ends, as in
+ * {@link Membership#isOverlapping}.
+ */
+class RosterIndex {
+    private final Map<String, TeamIntervals> teams = new HashMap<>();
+
+    public RosterIndex(MembershipIndex index) {
+        Map<String, List<long[]>> byTeam = new HashMap<>();
+        List<String> playerNames = new ArrayList<>();
+        for (Player player : index.getPlayers()) {
+            int playerId = playerNames.size();
+            playerNames.add(player.getPlayerName());
+            for (Membership membership : player.getMemberships()) {
+                byTeam.computeIfAbsent(membership.getTeamName(), k -> new ArrayList<>()).add(new long[]{
+                        PackedDate.toEpochDay(membership.getPackedStartDate()),
+                        PackedDate.toEpochDay(membership.getPackedEndDate()),
+                        playerId});
+            }
+        }
+        String[] names = playerNames.toArray(new String[0]);
+        for (Map.Entry<String, List<long[]>> team : byTeam.entrySet())
+            teams.put(team.getKey(), new TeamIntervals(team.getValue(), names));
+    }
+
+    /**
+     * Every player who was on {@code teamName} on {@code date}, in order of joining.
+     */
+    public List<String> getRoster(String teamName, Date date) {
+        TeamIntervals team = teams.get(teamName);
+        if (team == null)
+            return Collections.emptyList();
+        return team.roster(date.toEpochDay());
+    }
+
+    public int getHeadcount(String teamName, Date date) {
+        TeamIntervals team = teams.get(teamName);
+        if (team == null)
+            return 0;
+        return team.headcount(date.toEpochDay());
+    }
+
+    /**
+     * Headcount of {@code teamName} for each day in {@code [from, to]}.
+     */
+    public int[] getHeadcounts(String teamName, Date from, Date to) {
+        if (from.compareTo(to) > 0)
+            throw new IllegalArgumentException("Invalid date range");
+        int days = from.differenceInDays(to) + 1;
+        TeamIntervals team = teams.get(teamName);
+        if (team == null)
+            return new int[days];
+        return team.headcounts(from.toEpochDay(), days);
+    }
+
+    /**
+     * One team's memberships sorted by start day, stored as an implicit balanced
+     * interval tree: the middle of every index range is a node, and {@code maxEnd}
+     * holds the latest end day in that node's range. Separately sorted start and end
+     * days answer headcounts with two binary searches.
+     */
+    private static class TeamIntervals {
+        private final String[] playerNames;
+        private final long[] starts;
+        private final long[] ends;
+        private final int[] players;
+        private final long[] maxEnd;
+        private final long[] sortedEnds;
+
+        TeamIntervals(List<long[]> memberships, String[] playerNames) {
+            this.playerNames = playerNames;
+            memberships.sort((a, b) -> Long.compare(a[0], b[0]));
+            int n = memberships.size();
+            starts = new long[n];
+            ends = new long[n];
+            players = new int[n];
+            for (int i = 0; i < n; i++) {
+                long[] membership = memberships.get(i);
+                starts[i] = membership[0];
+                ends[i] = membership[1];
+                players[i] = (int) membership[2];
+            }
+            maxEnd = new long[n];
+            buildMaxEnd(0, n);
+            sortedEnds = ends.clone();
+            Arrays.sort(sortedEnds);
+        }
+
+        private long buildMaxEnd(int from, int to) {
+            if (from >= to)
+                return Long.MIN_VALUE;
+            int mid = (from + to) >>> 1;
+            maxEnd[mid] = Math.max(ends[mid], Math.max(buildMaxEnd(from, mid), buildMaxEnd(mid + 1, to)));
+            return maxEnd[mid];
+        }
+
+        List<String> roster(long day) {
+            List<String> result = new ArrayList<>();
+            collect(0, starts.length, day, result);
+            return result;
+        }
+
+        private void collect(int from, int to, long day, List<String> result) {
+            if (from >= to)
+                return;
+            int mid = (from + to) >>> 1;
+            if (maxEnd[mid] < day)
+                return;
+            collect(from, mid, day, result);
+            if (starts[mid] > day)
+                return;
+            if (ends[mid] >= day)
+                result.add(playerNames[players[mid]]);
+            collect(mid + 1, to, day, result);
+        }
+
+        int headcount(long day) {
+            return countAtMost(starts, day) - countAtMost(sortedEnds, day - 1);
+        }
+
+        int[] headcounts(long firstDay, int days) {
+            int[] result = new int[days];
+            int started = countAtMost(starts, firstDay - 1);
+            int ended = countAtMost(sortedEnds, firstDay - 2);
+            for (int i = 0; i < days; i++) {
+                long day = firstDay + i;
+                while (started < starts.length && starts[started] <= day)
+                    started++;
+                while (ended < sortedEnds.length && sortedEnds[ended] < day)
+                    ended++;
+                result[i] = started - ended;
+            }
+            return result;
+        }
+
+        /**
+         * Number of entries in the sorted array that are {@code <= value}.
+         */
+        private static int countAtMost(long[] sorted, long value) {
+            int low = 0;
+            int high = sorted.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (sorted[mid] <= value)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            return low;
+        }
+    }
+}
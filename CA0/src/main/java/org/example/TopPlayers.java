@@ -0,0 +1,37 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the {@code n} players with the most days offered so far, in a bounded min-heap.
+ * Ties go to the alphabetically first name.
+ */
+class TopPlayers {
+    private static final Comparator<Map.Entry<String, Integer>> BY_DAYS = Map.Entry.<String, Integer>comparingByValue()
+            .thenComparing(Map.Entry.comparingByKey(Comparator.reverseOrder()));
+
+    private final int n;
+    private final PriorityQueue<Map.Entry<String, Integer>> top = new PriorityQueue<>(BY_DAYS);
+
+    TopPlayers(int n) {
+        this.n = n;
+    }
+
+    void offer(String playerName, int days) {
+        if (n <= 0)
+            return;
+        top.add(Map.entry(playerName, days));
+        if (top.size() > n)
+            top.poll();
+    }
+
+    List<Map.Entry<String, Integer>> toList() {
+        List<Map.Entry<String, Integer>> result = new ArrayList<>(top);
+        result.sort(BY_DAYS.reversed());
+        return result;
+    }
+}
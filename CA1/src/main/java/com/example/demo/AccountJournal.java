@@ -0,0 +1,657 @@
+package com.example.demo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Write-ahead journal for {@link AccountService}. Every successful deposit and withdraw
+ * is appended to a memory-mapped segment together with the resulting balance, so
+ * replaying a record is idempotent. A TRANSFER or BATCH is appended as a group of
+ * records that replay only as a whole. A flusher thread forces everything appended so far
+ * with one fsync and then completes the futures of the replies waiting for it (group
+ * commit); the replies themselves are sent by the threads that wait on those futures.
+ * Snapshots are taken on a thread of their own, so writing one never holds up a flush.
+ * <p>
+ * Files in {@code sender.journal.dir}: {@code journal-<generation>.log} segments and
+ * {@code snapshot-<generation>.snap} snapshots, where a snapshot holds every balance
+ * written before its generation, with the {@link DedupCache} beside it in
+ * {@code dedup-<generation>.bin}. Recovery loads the newest snapshot and replays the
+ * segments from its generation on. A snapshot is taken every
+ * {@code sender.journal.snapshot-records} records, which bounds the replay. With an
+ * empty {@code sender.journal.dir} the journal is disabled and replies need not wait.
+ */
+@Component
+public class AccountJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountJournal.class);
+
+    public static final byte DEPOSIT = 1;
+    public static final byte WITHDRAW = 2;
+    public static final byte TRANSFER = 3;
+    public static final byte BATCH = 4;
+    // Ends a BATCH group: its "account" holds the batch's results rather than a name.
+    private static final byte RESULTS = 5;
+    private static final int RESULTS_PER_RECORD = Short.MAX_VALUE / 8;
+    // Set on every record of a group but the last.
+    private static final byte CONTINUES = (byte) 0x80;
+
+    private static final int SNAPSHOT_MAGIC = 0x41534E50; // "ASNP"
+    private static final int SNAPSHOT_VERSION = 1;
+    // type, amount, balance, request id, account length
+    private static final int RECORD_HEADER = 1 + 8 + 8 + 8 + 2;
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final long snapshotRecords;
+
+    private final Object lock = new Object();
+    // Held for a whole snapshot, so the snapshot thread and close() never take one at once.
+    private final Object snapshotLock = new Object();
+    private final CRC32 crc = new CRC32();
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+
+    // Null when the journal is used on its own, e.g. in tests.
+    @Autowired
+    private DedupCache dedup;
+
+    private AccountService accounts;
+    private long generation;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int flushedPosition;
+    private long appended;
+    private long durable;
+    private long recordsSinceSnapshot;
+    private boolean running;
+    private Thread flusher;
+    private Thread snapshotter;
+    private long lastRecoveryMillis;
+    private long forces;
+    private long recordsForced;
+
+    @Autowired
+    public AccountJournal(@Value("${sender.journal.dir:}") String dir,
+                          @Value("${sender.journal.segment-bytes:67108864}") int segmentBytes,
+                          @Value("${sender.journal.snapshot-records:1000000}") long snapshotRecords) {
+        this(dir.isEmpty() ? null : Path.of(dir), segmentBytes, snapshotRecords);
+    }
+
+    AccountJournal(Path dir, int segmentBytes, long snapshotRecords) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.snapshotRecords = snapshotRecords;
+    }
+
+    AccountJournal(Path dir, int segmentBytes, long snapshotRecords, DedupCache dedup) {
+        this(dir, segmentBytes, snapshotRecords);
+        this.dedup = dedup;
+    }
+
+    /**
+     * A journal that records nothing, for running the service without persistence.
+     */
+    static AccountJournal disabled() {
+        return new AccountJournal((Path) null, 0, 0);
+    }
+
+    public boolean isEnabled() {
+        return dir != null;
+    }
+
+    /**
+     * Restores {@code accounts} from the latest snapshot and journal tail, then starts
+     * journaling into a fresh segment.
+     */
+    void open(AccountService accounts) throws IOException {
+        if (dir == null)
+            return;
+        long start = System.nanoTime();
+        Files.createDirectories(dir);
+        this.accounts = accounts;
+
+        long replayFrom = 0;
+        int restored = 0;
+        for (long snapshot : generations("snapshot-", ".snap")) {
+            try {
+                restored = loadSnapshot(snapshotPath(snapshot), accounts);
+                replayFrom = snapshot;
+                if (dedup != null && Files.exists(dedupPath(snapshot)))
+                    dedup.read(dedupPath(snapshot));
+                break;
+            } catch (IOException e) {
+                log.warn("Skipping unreadable snapshot {}", snapshotPath(snapshot), e);
+            }
+        }
+
+        long replayed = 0;
+        long lastGeneration = replayFrom - 1;
+        List<Long> segments = generations("journal-", ".log");
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            long segmentGeneration = segments.get(i);
+            lastGeneration = Math.max(lastGeneration, segmentGeneration);
+            if (segmentGeneration >= replayFrom)
+                replayed += replay(journalPath(segmentGeneration), accounts, dedup);
+        }
+
+        synchronized (lock) {
+            // Never append after a possibly torn tail: new records go to a new segment.
+            startSegment(lastGeneration + 1);
+            running = true;
+        }
+        flusher = new Thread(this::runFlusher, "account-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        snapshotter = new Thread(this::runSnapshotter, "account-journal-snapshotter");
+        snapshotter.setDaemon(true);
+        snapshotter.start();
+
+        lastRecoveryMillis = (System.nanoTime() - start) / 1_000_000;
+        log.info("Recovered {} accounts from snapshot {} and {} journal records in {} ms",
+                restored, replayFrom, replayed, lastRecoveryMillis);
+    }
+
+    /**
+     * Appends one balance change. Called under the account's stripe lock, so the journal
+     * order of one account matches the order its changes were applied in.
+     */
+    void append(byte type, String accountNo, long amount, long balance, long requestId) {
+        if (dir == null)
+            return;
+        byte[] account = accountNo.getBytes(StandardCharsets.UTF_8);
+        if (account.length > Short.MAX_VALUE)
+            throw new IllegalArgumentException("Account number too long to journal");
+        synchronized (lock) {
+            reserve(4 + RECORD_HEADER + account.length + 4);
+            put(type, account, amount, balance, requestId);
+        }
+    }
+
+    /**
+     * Appends the final balances of an atomic TRANSFER or BATCH as one group in a single
+     * segment, with {@code requestId} and the payload's {@link DedupCache} fingerprint on
+     * its last record, the latter in place of an amount. A BATCH also records its
+     * {@code results}, so that recovery can answer a retry with the original reply.
+     * Replay restores a group only if that last record made it to disk, so a crash never
+     * leaves half of one applied.
+     */
+    void appendGroup(byte type, Map<String, Long> balances, long[] results, long requestId, long fingerprint) {
+        if (dir == null)
+            return;
+        List<byte[]> records = new ArrayList<>(balances.size() + 1);
+        int size = 0;
+        for (String accountNo : balances.keySet()) {
+            byte[] account = accountNo.getBytes(StandardCharsets.UTF_8);
+            if (account.length > Short.MAX_VALUE)
+                throw new IllegalArgumentException("Account number too long to journal");
+            records.add(account);
+        }
+        int accounts = records.size();
+        if (results != null) {
+            for (int from = 0; from < results.length; from += RESULTS_PER_RECORD) {
+                int count = Math.min(RESULTS_PER_RECORD, results.length - from);
+                ByteBuffer chunk = ByteBuffer.allocate(8 * count);
+                for (int i = 0; i < count; i++)
+                    chunk.putLong(results[from + i]);
+                records.add(chunk.array());
+            }
+        }
+        for (byte[] record : records)
+            size += 4 + RECORD_HEADER + record.length + 4;
+        if (size + 4 > segmentBytes)
+            throw new IllegalArgumentException("Group too large for a journal segment");
+        synchronized (lock) {
+            reserve(size);
+            Iterator<Long> balance = balances.values().iterator();
+            for (int i = 0; i < records.size(); i++) {
+                boolean last = i == records.size() - 1;
+                byte recordType = i < accounts ? type : RESULTS;
+                put(last ? recordType : (byte) (recordType | CONTINUES), records.get(i),
+                        last ? fingerprint : 0, i < accounts ? balance.next() : 0,
+                        last ? requestId : DedupCache.NO_REQUEST);
+            }
+        }
+    }
+
+    // Caller holds lock.
+    private void reserve(int size) {
+        if (segment == null)
+            throw new IllegalStateException("Journal is closed");
+        // Keep 4 zero bytes behind the last record so replay sees where the segment ends.
+        if (segment.remaining() < size + 4)
+            rollSegment();
+    }
+
+    // Caller holds lock and has reserved room for the record.
+    private void put(byte type, byte[] account, long amount, long balance, long requestId) {
+        int payload = RECORD_HEADER + account.length;
+        int start = segment.position();
+        segment.putInt(payload)
+                .put(type)
+                .putLong(amount)
+                .putLong(balance)
+                .putLong(requestId)
+                .putShort((short) account.length)
+                .put(account);
+        crc.reset();
+        crc.update(segment.slice(start + 4, payload));
+        segment.putInt((int) crc.getValue());
+        appended++;
+        if (++recordsSinceSnapshot == snapshotRecords)
+            lock.notifyAll();
+    }
+
+    /**
+     * A future that completes once everything appended so far is on disk: already complete
+     * when the journal is disabled or flushed, otherwise completed by the flusher thread
+     * after the next fsync. Wait on it, or continue on an executor of your own, rather than
+     * chaining work that would run on the flusher.
+     */
+    public CompletableFuture<Void> whenDurable() {
+        if (dir == null)
+            return CompletableFuture.completedFuture(null);
+        synchronized (lock) {
+            if (durable < appended || !pending.isEmpty()) {
+                CompletableFuture<Void> durable = new CompletableFuture<>();
+                pending.add(new Pending(appended, durable));
+                lock.notifyAll();
+                return durable;
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Forces everything appended so far to disk on the calling thread; one call per batch
+     * is the batch's group commit.
+     */
+    public void sync() {
+        if (dir != null)
+            completeAll(flush());
+    }
+
+    public long getLastRecoveryMillis() {
+        return lastRecoveryMillis;
+    }
+
+    /**
+     * The fsyncs that wrote records, and the records they wrote: their ratio is how many
+     * records a group commit takes to disk at once.
+     */
+    public long getForces() {
+        synchronized (lock) {
+            return forces;
+        }
+    }
+
+    public long getRecordsForced() {
+        synchronized (lock) {
+            return recordsForced;
+        }
+    }
+
+    /**
+     * Rolls to a new segment and writes a snapshot of every balance up to it, then
+     * deletes the segments and snapshots it replaces.
+     */
+    public void snapshot() throws IOException {
+        if (dir == null)
+            return;
+        synchronized (snapshotLock) {
+            writeSnapshot();
+        }
+    }
+
+    private void writeSnapshot() throws IOException {
+        long replayFrom;
+        synchronized (lock) {
+            if (segment == null)
+                return;
+            rollSegment();
+            replayFrom = generation;
+            recordsSinceSnapshot = 0;
+        }
+
+        // Balances are copied as of one instant, so groups are whole. They may already
+        // include records of the new segment; replaying those sets the same balances again.
+        Path tmp = dir.resolve("snapshot.tmp");
+        CRC32 checksum = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16), checksum))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(replayFrom);
+            int[] count = new int[1];
+            accounts.forEachBalance((accountNo, balance) -> {
+                try {
+                    byte[] account = accountNo.getBytes(StandardCharsets.UTF_8);
+                    out.writeShort(account.length);
+                    out.write(account);
+                    out.writeLong(balance);
+                    count[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.writeShort(-1);
+            out.writeInt(count[0]);
+            out.flush();
+            out.writeInt((int) checksum.getValue());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        try (FileChannel file = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            file.force(true);
+        }
+        // The request ids of the deleted segments live on in the dedup file.
+        if (dedup != null)
+            dedup.write(dedupPath(replayFrom));
+        // Every record behind the balances and request ids written above must be on disk
+        // before the snapshot can stand in for the segments it replaces.
+        completeAll(flush());
+        Files.move(tmp, snapshotPath(replayFrom), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        for (long old : generations("journal-", ".log")) {
+            if (old < replayFrom)
+                Files.deleteIfExists(journalPath(old));
+        }
+        for (long old : generations("snapshot-", ".snap")) {
+            if (old < replayFrom) {
+                Files.deleteIfExists(snapshotPath(old));
+                Files.deleteIfExists(dedupPath(old));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        if (dir == null || flusher == null)
+            return;
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+        flusher.join();
+        snapshotter.join();
+        sync();
+        snapshot();
+        synchronized (lock) {
+            channel.close();
+            channel = null;
+            segment = null;
+        }
+    }
+
+    private void runFlusher() {
+        while (true) {
+            synchronized (lock) {
+                try {
+                    while (running && pending.isEmpty())
+                        lock.wait();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (!running)
+                    return;
+            }
+            completeAll(flush());
+        }
+    }
+
+    private void runSnapshotter() {
+        while (true) {
+            synchronized (lock) {
+                try {
+                    while (running && recordsSinceSnapshot < snapshotRecords)
+                        lock.wait();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (!running)
+                    return;
+            }
+            try {
+                snapshot();
+            } catch (IOException | UncheckedIOException e) {
+                log.error("Journal snapshot failed", e);
+            }
+        }
+    }
+
+    /**
+     * Forces the unflushed part of the current segment and returns the waiters it released.
+     */
+    private List<CompletableFuture<Void>> flush() {
+        MappedByteBuffer buffer;
+        long target;
+        int from;
+        int to;
+        synchronized (lock) {
+            if (segment == null)
+                return List.of();
+            buffer = segment;
+            target = appended;
+            from = flushedPosition;
+            to = segment.position();
+        }
+        if (to > from)
+            force(buffer, from, to - from);
+
+        List<CompletableFuture<Void>> ready = new ArrayList<>();
+        synchronized (lock) {
+            if (buffer == segment)
+                flushedPosition = Math.max(flushedPosition, to);
+            if (to > from && target > durable) {
+                forces++;
+                recordsForced += target - durable;
+            }
+            durable = Math.max(durable, target);
+            while (!pending.isEmpty() && pending.peek().sequence <= durable)
+                ready.add(pending.poll().durable);
+        }
+        return ready;
+    }
+
+    // Overridden by tests to hold a flush back.
+    void force(MappedByteBuffer buffer, int from, int length) {
+        buffer.force(from, length);
+    }
+
+    private static void completeAll(List<CompletableFuture<Void>> waiters) {
+        for (CompletableFuture<Void> waiter : waiters)
+            waiter.complete(null);
+    }
+
+    // Caller holds lock.
+    private void rollSegment() throws UncheckedIOException {
+        segment.force();
+        if (appended > durable) {
+            forces++;
+            recordsForced += appended - durable;
+        }
+        durable = appended;
+        try {
+            channel.close();
+            startSegment(generation + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Caller holds lock.
+    private void startSegment(long nextGeneration) throws UncheckedIOException {
+        try {
+            generation = nextGeneration;
+            channel = FileChannel.open(journalPath(generation),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            flushedPosition = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int loadSnapshot(Path file, AccountService accounts) throws IOException {
+        CRC32 checksum = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 16), checksum))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION)
+                throw new IOException("Not an account snapshot");
+            in.readLong();
+            List<String> names = new ArrayList<>();
+            List<Long> balances = new ArrayList<>();
+            for (int length = in.readShort(); length != -1; length = in.readShort()) {
+                byte[] account = in.readNBytes(length);
+                names.add(new String(account, StandardCharsets.UTF_8));
+                balances.add(in.readLong());
+            }
+            int count = in.readInt();
+            int expected = (int) checksum.getValue();
+            if (count != names.size() || in.readInt() != expected)
+                throw new IOException("Corrupt account snapshot");
+            // Only restore once the whole snapshot has checked out.
+            for (int i = 0; i < count; i++)
+                accounts.restore(names.get(i), balances.get(i));
+            return count;
+        }
+    }
+
+    private static long replay(Path file, AccountService accounts, DedupCache dedup) throws IOException {
+        long records = 0;
+        CRC32 checksum = new CRC32();
+        List<String> groupAccounts = new ArrayList<>();
+        List<Long> groupBalances = new ArrayList<>();
+        List<byte[]> groupResults = new ArrayList<>();
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            while (buffer.remaining() >= 4) {
+                int start = buffer.position();
+                int payload = buffer.getInt();
+                if (payload < RECORD_HEADER || payload + 4 > buffer.remaining())
+                    break;
+                checksum.reset();
+                checksum.update(buffer.slice(start + 4, payload));
+                if (buffer.getInt(start + 4 + payload) != (int) checksum.getValue())
+                    break;
+                byte type = buffer.get();
+                long amount = buffer.getLong();
+                long balance = buffer.getLong();
+                long requestId = buffer.getLong();
+                int length = buffer.getShort() & 0xFFFF;
+                if (length != payload - RECORD_HEADER)
+                    break;
+                byte[] account = new byte[length];
+                buffer.get(account);
+                buffer.getInt();
+                if ((type & ~CONTINUES) == RESULTS) {
+                    groupResults.add(account);
+                } else {
+                    groupAccounts.add(new String(account, StandardCharsets.UTF_8));
+                    groupBalances.add(balance);
+                }
+                if ((type & CONTINUES) != 0)
+                    continue;
+                for (int i = 0; i < groupAccounts.size(); i++)
+                    accounts.restore(groupAccounts.get(i), groupBalances.get(i));
+                records += groupAccounts.size();
+                if (dedup != null && requestId != DedupCache.NO_REQUEST) {
+                    // A group's last record holds its fingerprint, 0 in journals from before them.
+                    if (type == RESULTS)
+                        dedup.putBatch(requestId, amount, resultsOf(groupResults));
+                    else if (type == TRANSFER)
+                        dedup.put(requestId, commandOf(type), amount, CommandProcessor.STATUS_OK);
+                    else
+                        dedup.put(requestId, commandOf(type), DedupCache.fingerprintOf(commandOf(type),
+                                groupAccounts.get(0), null, amount), CommandProcessor.STATUS_OK);
+                }
+                groupAccounts.clear();
+                groupBalances.clear();
+                groupResults.clear();
+            }
+        }
+        return records;
+    }
+
+    private static long[] resultsOf(List<byte[]> records) {
+        int count = 0;
+        for (byte[] record : records)
+            count += record.length / 8;
+        long[] results = new long[count];
+        int i = 0;
+        for (byte[] record : records) {
+            ByteBuffer chunk = ByteBuffer.wrap(record);
+            while (chunk.hasRemaining())
+                results[i++] = chunk.getLong();
+        }
+        return results;
+    }
+
+    private static int commandOf(byte type) {
+        switch (type) {
+            case DEPOSIT:
+                return CommandMetrics.DEPOSIT;
+            case WITHDRAW:
+                return CommandMetrics.WITHDRAW;
+            case TRANSFER:
+                return CommandMetrics.TRANSFER;
+            default:
+                return CommandMetrics.BATCH;
+        }
+    }
+
+    /**
+     * Generations of the files with the given prefix and suffix, newest first.
+     */
+    private List<Long> generations(String prefix, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.startsWith(prefix) && name.endsWith(suffix))
+                    .map(name -> Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())))
+                    .sorted((a, b) -> Long.compare(b, a))
+                    .toList();
+        }
+    }
+
+    private Path journalPath(long generation) {
+        return dir.resolve(String.format("journal-%016d.log", generation));
+    }
+
+    private Path dedupPath(long generation) {
+        return dir.resolve(String.format("dedup-%016d.bin", generation));
+    }
+
+    private Path snapshotPath(long generation) {
+        return dir.resolve(String.format("snapshot-%016d.snap", generation));
+    }
+
+    private record Pending(long sequence, CompletableFuture<Void> durable) {
+    }
+}
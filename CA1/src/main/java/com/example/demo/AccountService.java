@@ -1,37 +1,257 @@
 package com.example.demo;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjLongConsumer;
 
 @Service
 public class AccountService {
 
-    private Map<String, Integer> accounts = new HashMap<>();
+    private static final int DEFAULT_STRIPES = 64;
 
-    public void deposit(String accountNo, int amount) {
-        accounts.putIfAbsent(accountNo, 0);
-        accounts.computeIfPresent(accountNo, (k, v) -> v + amount);
+    // Accounts are spread over independently locked stripes, so commands for different
+    // accounts rarely contend while each deposit/withdraw stays atomic for its account.
+    private final ReentrantLock[] locks;
+    private final AccountTable[] stripes;
+
+    // Null when the service is used on its own, e.g. in tests.
+    @Autowired
+    private AccountJournal journal;
+
+    /**
+     * One step of {@link #apply}; {@code command} is a {@link CommandMetrics} code other
+     * than BATCH, and {@code toAccountNo} is only set for TRANSFER.
+     */
+    public record Operation(int command, String accountNo, String toAccountNo, long amount) {
+    }
+
+    /**
+     * What {@link #apply} did: per operation run, the status of a DEPOSIT, WITHDRAW or
+     * TRANSFER, or the balance (-1 if unknown) of a BALANCE. {@code failedAt} is the index
+     * of the operation that failed and stopped the unit, or -1 if it was applied.
+     */
+    public record Outcome(long[] results, int failedAt) {
+    }
+
+    public AccountService() {
+        this(DEFAULT_STRIPES);
+    }
+
+    AccountService(AccountJournal journal) {
+        this(DEFAULT_STRIPES);
+        this.journal = journal;
+    }
+
+    public AccountService(int stripeCount) {
+        int size = 1;
+        while (size < stripeCount) {
+            size <<= 1;
+        }
+        locks = new ReentrantLock[size];
+        stripes = new AccountTable[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+            stripes[i] = new AccountTable();
+        }
+    }
+
+    public void deposit(String accountNo, long amount) {
+        deposit(accountNo, amount, DedupCache.NO_REQUEST);
+    }
+
+    /**
+     * Deposits, journaling {@code requestId} with the change so that recovery knows the
+     * request was applied.
+     */
+    public void deposit(String accountNo, long amount, long requestId) {
+        int stripe = stripeOf(accountNo);
+        locks[stripe].lock();
+        try {
+            long balance = stripes[stripe].add(accountNo, amount);
+            if (journal != null)
+                journal.append(AccountJournal.DEPOSIT, accountNo, amount, balance, requestId);
+        } finally {
+            locks[stripe].unlock();
+        }
+    }
+
+    public int withdraw(String accountNo, long amount) {
+        return withdraw(accountNo, amount, DedupCache.NO_REQUEST);
+    }
+
+    public int withdraw(String accountNo, long amount, long requestId) {
+        int stripe = stripeOf(accountNo);
+        locks[stripe].lock();
+        try {
+            AccountTable accounts = stripes[stripe];
+            long balance = accounts.get(accountNo);
+            if(balance == AccountTable.MISSING) {
+                return 2; // Unknown account
+            }
+            if(balance < amount) {
+                return 1; // Insufficient balance
+            }
+            accounts.put(accountNo, balance - amount);
+            if (journal != null)
+                journal.append(AccountJournal.WITHDRAW, accountNo, amount, balance - amount, requestId);
+            return 0; // Success
+        } finally {
+            locks[stripe].unlock();
+        }
+    }
+
+    /**
+     * Moves {@code amount} between two existing accounts atomically; 0 on success, 1 for
+     * insufficient funds, 2 if either account is unknown.
+     */
+    public int transfer(String fromAccountNo, String toAccountNo, long amount, long requestId) {
+        Operation transfer = new Operation(CommandMetrics.TRANSFER, fromAccountNo, toAccountNo, amount);
+        return (int) apply(List.of(transfer), AccountJournal.TRANSFER, requestId).results()[0];
+    }
+
+    /**
+     * Runs {@code operations} in order as one unit: no other command sees a state in
+     * between, and if any DEPOSIT, WITHDRAW or TRANSFER fails, none of them is applied.
+     * The stripes involved are locked in ascending order, so concurrent calls cannot
+     * deadlock with each other or with the single-account commands.
+     */
+    public Outcome apply(List<Operation> operations, byte journalType, long requestId) {
+        int[] involved = new int[operations.size() * 2];
+        int count = 0;
+        for (Operation operation : operations) {
+            involved[count++] = stripeOf(operation.accountNo());
+            if (operation.toAccountNo() != null)
+                involved[count++] = stripeOf(operation.toAccountNo());
+        }
+        Arrays.sort(involved, 0, count);
+        int locked = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || involved[i] != involved[i - 1])
+                involved[locked++] = involved[i];
+        }
+        for (int i = 0; i < locked; i++)
+            locks[involved[i]].lock();
+        try {
+            Map<String, Long> changed = new LinkedHashMap<>();
+            long[] results = new long[operations.size()];
+            for (int i = 0; i < operations.size(); i++) {
+                Operation operation = operations.get(i);
+                results[i] = step(operation, changed);
+                if (operation.command() != CommandMetrics.BALANCE && results[i] != 0)
+                    return new Outcome(Arrays.copyOf(results, i + 1), i);
+            }
+            changed.forEach((accountNo, balance) -> stripes[stripeOf(accountNo)].put(accountNo, balance));
+            if (journal != null && !changed.isEmpty()) {
+                long fingerprint = requestId == DedupCache.NO_REQUEST
+                        ? DedupCache.UNKNOWN_FINGERPRINT : DedupCache.fingerprintOf(operations);
+                journal.appendGroup(journalType, changed, journalType == AccountJournal.BATCH ? results : null,
+                        requestId, fingerprint);
+            }
+            return new Outcome(results, -1);
+        } finally {
+            for (int i = locked - 1; i >= 0; i--)
+                locks[involved[i]].unlock();
+        }
+    }
+
+    // Runs one operation against the balances changed so far; caller holds the locks.
+    private long step(Operation operation, Map<String, Long> changed) {
+        String accountNo = operation.accountNo();
+        long balance = balanceOf(accountNo, changed);
+        switch (operation.command()) {
+            case CommandMetrics.DEPOSIT:
+                changed.put(accountNo, (balance == AccountTable.MISSING ? 0 : balance) + operation.amount());
+                return 0;
+            case CommandMetrics.WITHDRAW:
+                if (balance == AccountTable.MISSING)
+                    return 2;
+                if (balance < operation.amount())
+                    return 1;
+                changed.put(accountNo, balance - operation.amount());
+                return 0;
+            case CommandMetrics.TRANSFER:
+                String toAccountNo = operation.toAccountNo();
+                if (balance == AccountTable.MISSING || balanceOf(toAccountNo, changed) == AccountTable.MISSING)
+                    return 2;
+                if (balance < operation.amount())
+                    return 1;
+                changed.put(accountNo, balance - operation.amount());
+                changed.put(toAccountNo, balanceOf(toAccountNo, changed) + operation.amount());
+                return 0;
+            default:
+                return balance == AccountTable.MISSING ? -1 : balance;
+        }
     }
 
-    public int withdraw(String accountNo, int amount) {
-        if(!accounts.containsKey(accountNo)) {
-            return 2; // Unknown account
+    private long balanceOf(String accountNo, Map<String, Long> changed) {
+        Long balance = changed.get(accountNo);
+        return balance != null ? balance : stripes[stripeOf(accountNo)].get(accountNo);
+    }
+
+    public long getBalance(String accountNo) {
+        int stripe = stripeOf(accountNo);
+        locks[stripe].lock();
+        try {
+            long balance = stripes[stripe].get(accountNo);
+            if(balance == AccountTable.MISSING) {
+                return -1; // Unknown account
+            }
+            return balance;
+        } finally {
+            locks[stripe].unlock();
         }
-        int balance = accounts.get(accountNo);
-        if(balance < amount) {
-            return 1; // Insufficient balance
+    }
+
+    @PostConstruct
+    void recover() throws IOException {
+        if (journal != null)
+            journal.open(this);
+    }
+
+    /**
+     * Sets a balance while recovering from the journal.
+     */
+    void restore(String accountNo, long balance) {
+        int stripe = stripeOf(accountNo);
+        locks[stripe].lock();
+        try {
+            stripes[stripe].put(accountNo, balance);
+        } finally {
+            locks[stripe].unlock();
         }
-        accounts.computeIfPresent(accountNo, (k, v) -> v - amount);
-        return 0; // Success
     }
 
-    public int getBalance(String accountNo) {
-        if(!accounts.containsKey(accountNo)) {
-            return -1; // Unknown account
+    /**
+     * Visits every balance as of one instant. All stripes are locked, in the ascending
+     * order {@link #apply} uses, just long enough to copy them, so no TRANSFER or BATCH
+     * is ever seen half-applied.
+     */
+    void forEachBalance(ObjLongConsumer<String> visitor) {
+        AccountTable[] copies = new AccountTable[stripes.length];
+        for (ReentrantLock lock : locks)
+            lock.lock();
+        try {
+            for (int stripe = 0; stripe < stripes.length; stripe++)
+                copies[stripe] = stripes[stripe].copy();
+        } finally {
+            for (int stripe = locks.length - 1; stripe >= 0; stripe--)
+                locks[stripe].unlock();
         }
-        return accounts.get(accountNo);
+        for (AccountTable copy : copies)
+            copy.forEach(visitor);
+    }
+
+    private int stripeOf(String accountNo) {
+        int h = accountNo.hashCode();
+        return (h ^ (h >>> 16)) & (locks.length - 1);
     }
 
 }
\ No newline at end of file
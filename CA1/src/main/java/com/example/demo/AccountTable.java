@@ -0,0 +1,173 @@
+package com.example.demo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Balances keyed by account number, in an open-addressing table of primitive
+ * {@code long[]} keys and balances (16 bytes per slot, at most 2/3 full). Account
+ * numbers written in canonical decimal ("0", "42", but not "042", "-1" or anything
+ * longer than 18 digits) are stored as their numeric value; any other account number
+ * goes to a small {@link HashMap} on the side, so no two account numbers ever share an
+ * entry. Not thread-safe; {@link AccountService} guards each table with its stripe lock.
+ */
+final class AccountTable {
+
+    static final long MISSING = Long.MIN_VALUE;
+
+    private static final long EMPTY = -1;
+    private static final int MAX_DIGITS = 18;
+
+    private long[] keys;
+    private long[] balances;
+    private int size;
+    private Map<String, Long> others;
+
+    AccountTable() {
+        this(16);
+    }
+
+    AccountTable(int initialCapacity) {
+        int capacity = 16;
+        while (capacity * 2 < initialCapacity * 3)
+            capacity <<= 1;
+        keys = new long[capacity];
+        balances = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    private AccountTable(AccountTable source) {
+        keys = source.keys.clone();
+        balances = source.balances.clone();
+        size = source.size;
+        others = source.others == null ? null : new HashMap<>(source.others);
+    }
+
+    /**
+     * An independent copy, which can still be read once the stripe lock is released.
+     */
+    AccountTable copy() {
+        return new AccountTable(this);
+    }
+
+    /**
+     * The balance of {@code accountNo}, or {@link #MISSING} if it has none.
+     */
+    long get(String accountNo) {
+        long key = keyOf(accountNo);
+        if (key == EMPTY) {
+            Long balance = others == null ? null : others.get(accountNo);
+            return balance == null ? MISSING : balance;
+        }
+        int slot = slotOf(key);
+        return keys[slot] == key ? balances[slot] : MISSING;
+    }
+
+    /**
+     * Adds {@code amount} to the balance of {@code accountNo}, opening it at zero first
+     * if needed, and returns the new balance.
+     */
+    long add(String accountNo, long amount) {
+        long key = keyOf(accountNo);
+        if (key == EMPTY) {
+            if (others == null)
+                others = new HashMap<>();
+            return others.merge(accountNo, amount, Long::sum);
+        }
+        int slot = slotOf(key);
+        if (keys[slot] != key)
+            slot = insert(slot, key);
+        return balances[slot] += amount;
+    }
+
+    void put(String accountNo, long balance) {
+        long key = keyOf(accountNo);
+        if (key == EMPTY) {
+            if (others == null)
+                others = new HashMap<>();
+            others.put(accountNo, balance);
+            return;
+        }
+        int slot = slotOf(key);
+        if (keys[slot] != key)
+            slot = insert(slot, key);
+        balances[slot] = balance;
+    }
+
+    int size() {
+        return size + (others == null ? 0 : others.size());
+    }
+
+    void forEach(ObjLongConsumer<String> visitor) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY)
+                visitor.accept(Long.toString(keys[slot]), balances[slot]);
+        }
+        if (others != null)
+            others.forEach(visitor::accept);
+    }
+
+    /**
+     * The numeric key of a canonical decimal account number, or {@link #EMPTY}.
+     */
+    static long keyOf(String accountNo) {
+        int length = accountNo.length();
+        if (length == 0 || length > MAX_DIGITS || (length > 1 && accountNo.charAt(0) == '0'))
+            return EMPTY;
+        long key = 0;
+        for (int i = 0; i < length; i++) {
+            int digit = accountNo.charAt(i) - '0';
+            if (digit < 0 || digit > 9)
+                return EMPTY;
+            key = key * 10 + digit;
+        }
+        return key;
+    }
+
+    /**
+     * The slot holding {@code key}, or the empty slot where it would go.
+     */
+    private int slotOf(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) mix(key) & mask;
+        while (keys[slot] != key && keys[slot] != EMPTY)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private int insert(int slot, long key) {
+        if ((size + 1) * 3 > keys.length * 2) {
+            grow();
+            slot = slotOf(key);
+        }
+        keys[slot] = key;
+        size++;
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldBalances = balances;
+        keys = new long[oldKeys.length * 2];
+        balances = new long[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slotOf(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                balances[slot] = oldBalances[i];
+            }
+        }
+    }
+
+    // Finalizer of MurmurHash3; consecutive account numbers spread over the whole table.
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+}
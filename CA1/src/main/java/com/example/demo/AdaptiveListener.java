@@ -0,0 +1,311 @@
+package com.example.demo;
+
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.MessageConsumer;
+import jakarta.jms.MessageProducer;
+import jakarta.jms.TemporaryQueue;
+import org.apache.activemq.artemis.api.core.management.ResourceNames;
+import org.apache.activemq.artemis.api.jms.management.JMSManagementHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jms.JmsException;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sizes the {@link Sender}'s INQ consumers to their load. Every {@code sender.adaptive.interval-ms} it reads
+ * the INQ depth from the broker, the lane backlog, and the p99 service and publish
+ * latency of the last interval, then moves the number of consumers and their Artemis
+ * {@code consumerWindowSize} (prefetch, in bytes) one step within the configured bounds:
+ * <ul>
+ * <li>service or publish p99 over target: one consumer fewer and half the window, so a
+ * slow stage is not fed more concurrent work;</li>
+ * <li>more than {@code backlog-high} waiting commands per consumer: one consumer more
+ * and twice the window;</li>
+ * <li>fewer than {@code backlog-low}: one consumer fewer and half the window, so quiet
+ * traffic is not spread over idle consumers sitting on prefetched messages.</li>
+ * </ul>
+ * A new window is passed on at most once per {@code window-cooldown-ms}. Each consumer
+ * takes it up on its own, without stopping the others: it finishes and acknowledges its
+ * commands in flight and reconnects, handing back only messages it never received.
+ * <p>
+ * Consumers range from {@code min-consumers} (1) to {@code max-consumers} (4). Artemis
+ * delivers all messages of one {@code JMSXGroupID} to one consumer, and
+ * {@link CommandClient} sets it to the command's first account, so that account's
+ * commands keep their order. Two consumers may hand an ungrouped client's commands for
+ * one account to its lane in either order; set {@code max-consumers=1} for such clients.
+ * Decisions are served at GET /metrics/listener.
+ */
+@Component
+@ConditionalOnProperty(name = "sender.adaptive.enabled", havingValue = "true")
+public class AdaptiveListener implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveListener.class);
+
+    private static final String MANAGEMENT_ADDRESS = "activemq.management";
+    private static final long MANAGEMENT_TIMEOUT_MS = 500;
+
+    public enum Decision { HOLD, SCALE_UP, BACK_OFF, SCALE_DOWN }
+
+    // Absent in batch mode, which has nothing to size.
+    @Autowired(required = false)
+    private Sender sender;
+
+    @Autowired
+    private JmsTemplate jmsTemplate;
+
+    @Autowired
+    private CommandLanes commandLanes;
+
+    @Autowired
+    private CommandMetrics metrics;
+
+    @Value("${sender.adaptive.interval-ms:1000}")
+    private long intervalMs;
+
+    @Value("${sender.adaptive.min-consumers:1}")
+    private int minConsumers;
+
+    @Value("${sender.adaptive.max-consumers:4}")
+    private int maxConsumers;
+
+    @Value("${sender.adaptive.min-window-bytes:65536}")
+    private int minWindow;
+
+    @Value("${sender.adaptive.max-window-bytes:4194304}")
+    private int maxWindow;
+
+    @Value("${sender.adaptive.backlog-low:10}")
+    private long backlogLow;
+
+    @Value("${sender.adaptive.backlog-high:1000}")
+    private long backlogHigh;
+
+    @Value("${sender.adaptive.service-p99-ms:20}")
+    private long serviceTargetMs;
+
+    @Value("${sender.adaptive.publish-p99-ms:50}")
+    private long publishTargetMs;
+
+    @Value("${sender.adaptive.window-cooldown-ms:10000}")
+    private long windowCooldownMs;
+
+    private final Map<Decision, Long> decisions = new EnumMap<>(Decision.class);
+    private ScheduledExecutorService scheduler;
+    private int consumers;
+    private int window;
+    private int appliedWindow;
+    private long windowAppliedAt;
+    private long windowChanges;
+    private Decision lastDecision = Decision.HOLD;
+    private long lastDepth = -1;
+    private long lastBacklog;
+    private long lastServiceP99;
+    private long lastPublishP99;
+
+    AdaptiveListener() {
+    }
+
+    AdaptiveListener(int minConsumers, int maxConsumers, int minWindow, int maxWindow,
+                     long backlogLow, long backlogHigh, long serviceTargetMs, long publishTargetMs) {
+        this.minConsumers = minConsumers;
+        this.maxConsumers = maxConsumers;
+        this.minWindow = minWindow;
+        this.maxWindow = maxWindow;
+        this.backlogLow = backlogLow;
+        this.backlogHigh = backlogHigh;
+        this.serviceTargetMs = serviceTargetMs;
+        this.publishTargetMs = publishTargetMs;
+        this.consumers = minConsumers;
+        this.window = minWindow;
+    }
+
+    @Override
+    public void start() {
+        synchronized (this) {
+            if (sender != null) {
+                consumers = Math.min(maxConsumers, Math.max(minConsumers, sender.getConsumers()));
+                window = Math.min(maxWindow, Math.max(minWindow, sender.getWindow()));
+                sender.setConsumers(consumers);
+                sender.setWindow(window);
+            } else {
+                log.warn("No INQ Sender to size; batch mode keeps its single consumer");
+                consumers = minConsumers;
+                window = minWindow;
+            }
+            appliedWindow = window;
+            windowAppliedAt = System.nanoTime();
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "inq-adaptive-listener");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::tick, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return scheduler != null && !scheduler.isShutdown();
+    }
+
+    // Starts before, and stops after, the Sender, so its first consumers get the bounded sizes.
+    @Override
+    public int getPhase() {
+        return DEFAULT_PHASE - 1;
+    }
+
+    /**
+     * Moves the consumer count and window one step for the given signals; {@code depth}
+     * is -1 when the broker could not be asked, latencies are in nanoseconds.
+     */
+    synchronized Decision decide(long depth, long backlog, long serviceP99, long publishP99) {
+        long waiting = Math.max(depth, 0) + backlog;
+        Decision decision;
+        if (serviceP99 > serviceTargetMs * 1_000_000 || publishP99 > publishTargetMs * 1_000_000)
+            decision = Decision.BACK_OFF;
+        else if (waiting > backlogHigh * consumers)
+            decision = Decision.SCALE_UP;
+        else if (waiting < backlogLow * consumers)
+            decision = Decision.SCALE_DOWN;
+        else
+            decision = Decision.HOLD;
+
+        if (decision == Decision.SCALE_UP) {
+            consumers = Math.min(maxConsumers, consumers + 1);
+            window = (int) Math.min(maxWindow, 2L * window);
+        } else if (decision != Decision.HOLD) {
+            consumers = Math.max(minConsumers, consumers - 1);
+            window = Math.max(minWindow, window / 2);
+        }
+        decisions.merge(decision, 1L, Long::sum);
+        lastDecision = decision;
+        lastDepth = depth;
+        lastBacklog = backlog;
+        lastServiceP99 = serviceP99;
+        lastPublishP99 = publishP99;
+        return decision;
+    }
+
+    synchronized int getConsumers() {
+        return consumers;
+    }
+
+    synchronized int getWindow() {
+        return window;
+    }
+
+    /**
+     * Current sizing, the signals behind the last decision (latencies in microseconds)
+     * and how often each decision was taken.
+     */
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("consumers", consumers);
+        snapshot.put("windowBytes", window);
+        snapshot.put("appliedWindowBytes", appliedWindow);
+        snapshot.put("windowChanges", windowChanges);
+        snapshot.put("inqDepth", lastDepth);
+        snapshot.put("laneBacklog", lastBacklog);
+        snapshot.put("serviceP99", lastServiceP99 / 1000);
+        snapshot.put("publishP99", lastPublishP99 / 1000);
+        snapshot.put("lastDecision", lastDecision);
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Decision decision : Decision.values())
+            counts.put(decision.name(), decisions.getOrDefault(decision, 0L));
+        snapshot.put("decisions", counts);
+        return snapshot;
+    }
+
+    private void tick() {
+        try {
+            if (sender == null || !sender.isRunning())
+                return;
+            decide(inqDepth(), commandLanes.getBacklog(),
+                    metrics.drainRecent(CommandMetrics.SERVICE, 0.99),
+                    metrics.drainRecent(CommandMetrics.PUBLISH, 0.99));
+            applyConsumers();
+            applyWindow();
+        } catch (RuntimeException e) {
+            log.warn("Adjusting the INQ consumers failed", e);
+        }
+    }
+
+    private void applyConsumers() {
+        int target = getConsumers();
+        if (target == sender.getConsumers())
+            return;
+        sender.setConsumers(target);
+        log.info("INQ now has {} consumers", target);
+    }
+
+    private void applyWindow() {
+        int target = getWindow();
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (target == appliedWindow || now - windowAppliedAt < windowCooldownMs * 1_000_000)
+                return;
+            appliedWindow = target;
+            windowAppliedAt = now;
+            windowChanges++;
+        }
+        sender.setWindow(target);
+        log.info("INQ consumers move to a {} byte consumer window", target);
+    }
+
+    /**
+     * Messages waiting on INQ, asked from the broker's management address, or -1.
+     */
+    private long inqDepth() {
+        try {
+            Long depth = jmsTemplate.execute(session -> {
+                TemporaryQueue replies = session.createTemporaryQueue();
+                try (MessageProducer producer = session.createProducer(session.createQueue(MANAGEMENT_ADDRESS));
+                     MessageConsumer consumer = session.createConsumer(replies)) {
+                    Message request = session.createMessage();
+                    JMSManagementHelper.putAttribute(request, ResourceNames.QUEUE + "INQ", "messageCount");
+                    request.setJMSReplyTo(replies);
+                    producer.send(request);
+                    Message reply = consumer.receive(MANAGEMENT_TIMEOUT_MS);
+                    if (reply == null || !JMSManagementHelper.hasOperationSucceeded(reply))
+                        return -1L;
+                    return ((Number) JMSManagementHelper.getResult(reply)).longValue();
+                } catch (JMSException e) {
+                    throw e;
+                } catch (Exception e) {
+                    log.debug("Unreadable INQ depth reply", e);
+                    return -1L;
+                } finally {
+                    replies.delete();
+                }
+            }, true);
+            return depth != null ? depth : -1;
+        } catch (JmsException e) {
+            log.debug("Could not read the INQ depth", e);
+            return -1;
+        }
+    }
+
+}
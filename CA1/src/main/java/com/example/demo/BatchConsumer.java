@@ -0,0 +1,203 @@
+package com.example.demo;
+
+import jakarta.jms.BytesMessage;
+import jakarta.jms.Connection;
+import jakarta.jms.ConnectionFactory;
+import jakarta.jms.Destination;
+import jakarta.jms.JMSException;
+import jakarta.jms.MessageConsumer;
+import jakarta.jms.MessageProducer;
+import jakarta.jms.Session;
+import jakarta.jms.TextMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Consumes INQ in batches inside one transacted session. A batch closes after
+ * {@code sender.batch.max-messages} commands or {@code sender.batch.max-wait-ms}
+ * milliseconds, its commands run on the per-account lanes, the journal is synced once,
+ * and all replies are sent to OUTQ before a single commit acknowledges the inputs and
+ * publishes the outputs.
+ * <p>
+ * The commit covers the messages, not the accounts: a batch rolled back after its
+ * commands ran leaves them applied. Its redelivered commands carry the same request id
+ * (see {@link Sender#requestIdOf}), so they are answered from the {@link DedupCache}
+ * rather than applied twice.
+ * Replaces {@link Sender} when {@code sender.batch.enabled=true}.
+ */
+@Component
+@ConditionalOnProperty(name = "sender.batch.enabled", havingValue = "true")
+public class BatchConsumer implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchConsumer.class);
+
+    private static final long IDLE_RECEIVE_MS = 1000;
+
+    @Autowired
+    private ConnectionFactory connectionFactory;
+
+    @Autowired
+    private CommandProcessor commandProcessor;
+
+    @Autowired
+    private CommandLanes commandLanes;
+
+    @Autowired
+    private AccountJournal journal;
+
+    @Autowired
+    private CommandMetrics metrics;
+
+    @Value("${sender.batch.max-messages:100}")
+    private int maxMessages;
+
+    @Value("${sender.batch.max-wait-ms:5}")
+    private long maxWaitMs;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    BatchConsumer() {
+    }
+
+    BatchConsumer(CommandProcessor commandProcessor, CommandLanes commandLanes, AccountJournal journal,
+                  int maxMessages, long maxWaitMs) {
+        this.commandProcessor = commandProcessor;
+        this.commandLanes = commandLanes;
+        this.journal = journal;
+        this.metrics = new CommandMetrics();
+        this.maxMessages = maxMessages;
+        this.maxWaitMs = maxWaitMs;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        worker = new Thread(this::run, "inq-batch-consumer");
+        worker.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (worker == null)
+            return;
+        worker.interrupt();
+        try {
+            worker.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void run() {
+        long backoffMs = 100;
+        while (running) {
+            try (Connection connection = connectionFactory.createConnection()) {
+                Session session = connection.createSession(true, Session.SESSION_TRANSACTED);
+                MessageConsumer consumer = session.createConsumer(session.createQueue("INQ"));
+                MessageProducer producer = session.createProducer(session.createQueue("OUTQ"));
+                MessageProducer replyToProducer = session.createProducer(null);
+                connection.start();
+                backoffMs = 100;
+                while (running) {
+                    processBatch(session, consumer, producer, replyToProducer);
+                }
+            } catch (JMSException | RuntimeException e) {
+                if (!running)
+                    return;
+                log.warn("Batch consumer lost its connection, retrying in {} ms", backoffMs, e);
+                try {
+                    Thread.sleep(backoffMs);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                backoffMs = Math.min(backoffMs * 2, 5000);
+            }
+        }
+    }
+
+    /**
+     * Receives, executes and replies to one batch, then commits. Returns the batch size.
+     * Replies go to OUTQ through {@code producer}, or through the anonymous
+     * {@code replyToProducer} to the JMSReplyTo of requests that carry one.
+     */
+    int processBatch(Session session, MessageConsumer consumer, MessageProducer producer,
+                     MessageProducer replyToProducer) throws JMSException {
+        List<jakarta.jms.Message> commands = new ArrayList<>(Math.min(maxMessages, 1024));
+        jakarta.jms.Message first = consumer.receive(IDLE_RECEIVE_MS);
+        if (first == null)
+            return 0;
+        long[] dequeuedAt = new long[maxMessages];
+        dequeuedAt[0] = System.nanoTime();
+        commands.add(first);
+
+        long deadline = System.nanoTime() + maxWaitMs * 1_000_000;
+        while (commands.size() < maxMessages) {
+            long remainingMs = (deadline - System.nanoTime()) / 1_000_000;
+            jakarta.jms.Message next = remainingMs > 0 ? consumer.receive(remainingMs) : consumer.receiveNoWait();
+            if (next == null)
+                break;
+            dequeuedAt[commands.size()] = System.nanoTime();
+            commands.add(next);
+        }
+
+        try {
+            // Replies are String for text commands and byte[] for binary ones.
+            List<CompletableFuture<Object>> replies = new ArrayList<>(commands.size());
+            int[] commandTypes = new int[commands.size()];
+            for (int i = 0; i < commands.size(); i++) {
+                replies.add(submit(commands.get(i), commandTypes, i));
+            }
+            for (CompletableFuture<Object> reply : replies) {
+                reply.join();
+            }
+            // One fsync for the whole batch, and no reply leaves before it.
+            journal.sync();
+            for (int i = 0; i < replies.size(); i++) {
+                long start = System.nanoTime();
+                jakarta.jms.Message reply = Sender.replyMessage(session, replies.get(i).join(), Sender.correlationIdOf(commands.get(i)));
+                Destination replyTo = commands.get(i).getJMSReplyTo();
+                if (replyTo == null)
+                    producer.send(reply);
+                else
+                    replyToProducer.send(replyTo, reply);
+                metrics.record(commandTypes[i], CommandMetrics.PUBLISH, System.nanoTime() - start);
+            }
+            session.commit();
+            for (int i = 0; i < replies.size(); i++) {
+                metrics.replied(commandTypes[i], dequeuedAt[i], replies.get(i).join());
+            }
+        } catch (JMSException | RuntimeException e) {
+            session.rollback();
+            throw e;
+        }
+        return commands.size();
+    }
+
+    private CompletableFuture<Object> submit(jakarta.jms.Message command, int[] commandTypes, int i) throws JMSException {
+        long requestId = Sender.requestIdOf(command);
+        if (command instanceof BytesMessage) {
+            byte[] request = command.getBody(byte[].class);
+            commandTypes[i] = CommandProcessor.commandOf(request);
+            return commandLanes.submit(BinaryProtocol.accountsOf(request), () -> commandProcessor.execute(request, requestId));
+        }
+        String text = command instanceof TextMessage message ? message.getText() : command.getBody(String.class);
+        commandTypes[i] = CommandProcessor.commandOf(text);
+        return commandLanes.submit(CommandProcessor.accountsOf(text), () -> commandProcessor.execute(text, requestId));
+    }
+}
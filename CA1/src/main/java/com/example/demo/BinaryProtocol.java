@@ -0,0 +1,221 @@
+package com.example.demo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary form of the banking commands, carried in a {@code BytesMessage}.
+ * <p>
+ * Request: opcode (1 byte), account length (1 byte, unsigned), account (UTF-8),
+ * amount (8 bytes, big-endian; ignored by BALANCE). TRANSFER appends the destination
+ * account length (1 byte) and account, and its amount must not be negative.
+ * BATCH: opcode, sub-request count (2 bytes), then each sub-request (any opcode but
+ * BATCH) preceded by its length (2 bytes).
+ * Reply: status (1 byte, same codes as the text replies), value (8 bytes, big-endian;
+ * the balance for BALANCE, otherwise 0). A BATCH reply has the batch status and the
+ * number of sub-replies as its value, followed by one reply per sub-request run.
+ */
+public final class BinaryProtocol {
+
+    public static final byte DEPOSIT = 1;
+    public static final byte WITHDRAW = 2;
+    public static final byte BALANCE = 3;
+    public static final byte TRANSFER = 4;
+    public static final byte BATCH = 5;
+
+    public static final int HEADER_LENGTH = 2;
+    public static final int AMOUNT_LENGTH = 8;
+    public static final int REPLY_LENGTH = 9;
+
+    private BinaryProtocol() {
+    }
+
+    public static byte[] encodeRequest(byte opcode, String accountNo, long amount) {
+        byte[] account = accountNo.getBytes(StandardCharsets.UTF_8);
+        if (account.length > 255)
+            throw new IllegalArgumentException("Account number longer than 255 bytes");
+        byte[] request = new byte[HEADER_LENGTH + account.length + AMOUNT_LENGTH];
+        request[0] = opcode;
+        request[1] = (byte) account.length;
+        System.arraycopy(account, 0, request, HEADER_LENGTH, account.length);
+        writeLong(request, HEADER_LENGTH + account.length, amount);
+        return request;
+    }
+
+    public static byte[] encodeTransfer(String fromAccountNo, String toAccountNo, long amount) {
+        byte[] to = toAccountNo.getBytes(StandardCharsets.UTF_8);
+        if (to.length > 255)
+            throw new IllegalArgumentException("Account number longer than 255 bytes");
+        byte[] from = encodeRequest(TRANSFER, fromAccountNo, amount);
+        byte[] request = new byte[from.length + 1 + to.length];
+        System.arraycopy(from, 0, request, 0, from.length);
+        request[from.length] = (byte) to.length;
+        System.arraycopy(to, 0, request, from.length + 1, to.length);
+        return request;
+    }
+
+    public static byte[] encodeBatch(List<byte[]> requests) {
+        if (requests.isEmpty() || requests.size() > 0xFFFF)
+            throw new IllegalArgumentException("A batch holds 1 to 65535 requests");
+        int length = 3;
+        for (byte[] request : requests) {
+            if (request.length > 0xFFFF)
+                throw new IllegalArgumentException("Request longer than 65535 bytes");
+            length += 2 + request.length;
+        }
+        byte[] batch = new byte[length];
+        batch[0] = BATCH;
+        writeShort(batch, 1, requests.size());
+        int offset = 3;
+        for (byte[] request : requests) {
+            writeShort(batch, offset, request.length);
+            System.arraycopy(request, 0, batch, offset + 2, request.length);
+            offset += 2 + request.length;
+        }
+        return batch;
+    }
+
+    public static byte[] encodeReply(int status, long value) {
+        byte[] reply = new byte[REPLY_LENGTH];
+        reply[0] = (byte) status;
+        writeLong(reply, 1, value);
+        return reply;
+    }
+
+    public static byte[] encodeBatchReply(int status, List<byte[]> replies) {
+        byte[] reply = new byte[REPLY_LENGTH * (1 + replies.size())];
+        reply[0] = (byte) status;
+        writeLong(reply, 1, replies.size());
+        for (int i = 0; i < replies.size(); i++)
+            System.arraycopy(replies.get(i), 0, reply, REPLY_LENGTH * (i + 1), REPLY_LENGTH);
+        return reply;
+    }
+
+    /**
+     * The {@code index}th sub-reply of a BATCH reply.
+     */
+    public static byte[] subReply(byte[] reply, int index) {
+        int offset = REPLY_LENGTH * (index + 1);
+        byte[] subReply = new byte[REPLY_LENGTH];
+        System.arraycopy(reply, offset, subReply, 0, REPLY_LENGTH);
+        return subReply;
+    }
+
+    public static int replyStatus(byte[] reply) {
+        return reply[0];
+    }
+
+    public static long replyValue(byte[] reply) {
+        return readLong(reply, 1);
+    }
+
+    /**
+     * Whether the request's length agrees with its length fields.
+     */
+    static boolean isWellFormed(byte[] request) {
+        if (request.length == 0)
+            return false;
+        if (request[0] == BATCH)
+            return subRequests(request) != null;
+        int end = HEADER_LENGTH + AMOUNT_LENGTH;
+        if (request.length < end)
+            return false;
+        end += accountLength(request);
+        if (request[0] != TRANSFER)
+            return request.length == end;
+        return request.length > end
+                && request.length == end + 1 + (request[end] & 0xFF)
+                && amountOf(request) >= 0;
+    }
+
+    static int accountLength(byte[] request) {
+        return request[1] & 0xFF;
+    }
+
+    /**
+     * The account number of a well-formed request other than BATCH.
+     */
+    static String accountOf(byte[] request) {
+        return new String(request, HEADER_LENGTH, accountLength(request), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Every account the request touches: its account, a TRANSFER's destination and
+     * those of each request in a BATCH. A malformed request gives {@code [""]}.
+     */
+    static List<String> accountsOf(byte[] request) {
+        if (!isWellFormed(request))
+            return List.of("");
+        List<String> accounts = new ArrayList<>(2);
+        for (byte[] subRequest : request[0] == BATCH ? subRequests(request) : List.of(request)) {
+            accounts.add(accountOf(subRequest));
+            if (subRequest[0] == TRANSFER)
+                accounts.add(toAccountOf(subRequest));
+        }
+        return accounts;
+    }
+
+    /**
+     * The destination account of a well-formed TRANSFER.
+     */
+    static String toAccountOf(byte[] request) {
+        int offset = HEADER_LENGTH + accountLength(request) + AMOUNT_LENGTH;
+        return new String(request, offset + 1, request[offset] & 0xFF, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The sub-requests of a BATCH, or null unless it is well-formed: non-empty, exact
+     * lengths, well-formed sub-requests and no nested batches.
+     */
+    static List<byte[]> subRequests(byte[] request) {
+        if (request.length < 3)
+            return null;
+        int count = readShort(request, 1);
+        List<byte[]> subRequests = new ArrayList<>(count);
+        int offset = 3;
+        for (int i = 0; i < count; i++) {
+            if (offset + 2 > request.length)
+                return null;
+            int length = readShort(request, offset);
+            offset += 2;
+            if (length == 0 || offset + length > request.length || request[offset] == BATCH)
+                return null;
+            byte[] subRequest = new byte[length];
+            System.arraycopy(request, offset, subRequest, 0, length);
+            if (!isWellFormed(subRequest))
+                return null;
+            subRequests.add(subRequest);
+            offset += length;
+        }
+        return count > 0 && offset == request.length ? subRequests : null;
+    }
+
+    static long amountOf(byte[] request) {
+        return readLong(request, HEADER_LENGTH + accountLength(request));
+    }
+
+    private static void writeShort(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 8);
+        bytes[offset + 1] = (byte) value;
+    }
+
+    private static int readShort(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 8 | bytes[offset + 1] & 0xFF;
+    }
+
+    static void writeLong(byte[] bytes, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.demo;
+
+import jakarta.jms.BytesMessage;
+import jakarta.jms.Connection;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.MessageConsumer;
+import jakarta.jms.MessageProducer;
+import jakarta.jms.Session;
+import jakarta.jms.TemporaryQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jms.core.MessageCreator;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client side of request/reply: sends commands to INQ with a temporary queue of its own
+ * as JMSReplyTo and a fresh JMSCorrelationID, and completes the returned future when
+ * the matching reply arrives. Any number of requests can be outstanding, and no client
+ * sees another's replies. Requests without JMSReplyTo are still answered on OUTQ.
+ * Each request's {@code JMSXGroupID} is its first account, so several INQ consumers
+ * still see one account's commands in the order they were sent.
+ * <p>
+ * Futures complete on the JMS delivery thread. One that is abandoned, e.g. through
+ * {@link CompletableFuture#orTimeout}, is forgotten; its late reply is dropped.
+ * Thread-safe. Starts {@code connection}; closing the client leaves it open.
+ */
+public class CommandClient implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(CommandClient.class);
+
+    private static final String GROUP_ID = "JMSXGroupID";
+
+    private final Session sendSession;
+    private final MessageProducer producer;
+    private final Session replySession;
+    private final TemporaryQueue replyQueue;
+    private final MessageConsumer replies;
+    private final Map<String, CompletableFuture<Message>> pending = new ConcurrentHashMap<>();
+    private final String correlationPrefix = UUID.randomUUID() + "-";
+    private final AtomicLong nextCorrelation = new AtomicLong();
+    private boolean closed;
+
+    public CommandClient(Connection connection) throws JMSException {
+        sendSession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        producer = sendSession.createProducer(sendSession.createQueue("INQ"));
+        replySession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        replyQueue = replySession.createTemporaryQueue();
+        replies = replySession.createConsumer(replyQueue);
+        replies.setMessageListener(this::onReply);
+        connection.start();
+    }
+
+    public CompletableFuture<String> send(String command) {
+        return send(command, DedupCache.NO_REQUEST);
+    }
+
+    /**
+     * Sends a text command; a non-zero {@code requestId} makes resending it safe.
+     */
+    public CompletableFuture<String> send(String command, long requestId) {
+        String accountNo = CommandProcessor.accountsOf(command).get(0);
+        return request(session -> session.createTextMessage(command), accountNo, requestId)
+                .thenApply(reply -> bodyOf(reply, String.class));
+    }
+
+    public CompletableFuture<byte[]> send(byte[] request) {
+        return send(request, DedupCache.NO_REQUEST);
+    }
+
+    /**
+     * Sends a {@link BinaryProtocol} request; a non-zero {@code requestId} makes resending it safe.
+     */
+    public CompletableFuture<byte[]> send(byte[] request, long requestId) {
+        return request(session -> {
+            BytesMessage message = session.createBytesMessage();
+            message.writeBytes(request);
+            return message;
+        }, BinaryProtocol.accountsOf(request).get(0), requestId).thenApply(reply -> bodyOf(reply, byte[].class));
+    }
+
+    /**
+     * Requests sent whose replies have not arrived yet.
+     */
+    public int getOutstanding() {
+        return pending.size();
+    }
+
+    private CompletableFuture<Message> request(MessageCreator creator, String accountNo, long requestId) {
+        String correlationId = correlationPrefix + nextCorrelation.incrementAndGet();
+        CompletableFuture<Message> reply = new CompletableFuture<>();
+        pending.put(correlationId, reply);
+        reply.whenComplete((message, failure) -> pending.remove(correlationId));
+        try {
+            // A JMS session is single-threaded, so senders take turns on it.
+            synchronized (producer) {
+                if (closed)
+                    throw new IllegalStateException("Client is closed");
+                Message message = creator.createMessage(sendSession);
+                message.setJMSCorrelationID(correlationId);
+                message.setJMSReplyTo(replyQueue);
+                if (!accountNo.isEmpty())
+                    message.setStringProperty(GROUP_ID, accountNo);
+                if (requestId != DedupCache.NO_REQUEST)
+                    message.setLongProperty(Sender.REQUEST_ID, requestId);
+                producer.send(message);
+            }
+        } catch (JMSException | RuntimeException e) {
+            reply.completeExceptionally(e);
+        }
+        return reply;
+    }
+
+    private void onReply(Message message) {
+        try {
+            CompletableFuture<Message> reply = pending.get(message.getJMSCorrelationID());
+            if (reply != null)
+                reply.complete(message);
+        } catch (JMSException e) {
+            log.warn("Dropping a reply without a readable correlation id", e);
+        }
+    }
+
+    private static <T> T bodyOf(Message reply, Class<T> type) {
+        try {
+            return reply.getBody(type);
+        } catch (JMSException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Deletes the reply queue and fails every request still waiting for its reply.
+     */
+    @Override
+    public void close() throws JMSException {
+        synchronized (producer) {
+            if (closed)
+                return;
+            closed = true;
+        }
+        try {
+            replies.close();
+            replyQueue.delete();
+            replySession.close();
+            sendSession.close();
+        } finally {
+            IllegalStateException failure = new IllegalStateException("Client closed before the reply arrived");
+            pending.values().forEach(reply -> reply.completeExceptionally(failure));
+        }
+    }
+}
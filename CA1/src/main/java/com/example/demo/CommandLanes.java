@@ -0,0 +1,173 @@
+package com.example.demo;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs commands on a fixed set of single-threaded lanes chosen by account number.
+ * Commands for one account always land on the same lane and run in submission order,
+ * while different accounts proceed in parallel. A command touching several accounts
+ * takes its turn on each of their lanes, so it stays in order with all of them.
+ * Each lane queues at most {@code sender.lanes.queue-capacity} commands; handing one
+ * to a full lane blocks the caller until there is room. With {@code sender.lanes=0}
+ * commands run on the caller's thread.
+ */
+@Component
+public class CommandLanes {
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private final ThreadPoolExecutor[] lanes;
+
+    public CommandLanes(int laneCount) {
+        this(laneCount, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    @Autowired
+    public CommandLanes(@Value("${sender.lanes:8}") int laneCount,
+                        @Value("${sender.lanes.queue-capacity:1024}") int queueCapacity) {
+        lanes = new ThreadPoolExecutor[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            String name = "command-lane-" + i;
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                    r -> new Thread(r, name), CommandLanes::waitForRoom);
+        }
+    }
+
+    /**
+     * Runs the command on the account's lane and hands back its result; a failed command
+     * completes the future exceptionally.
+     */
+    public <T> CompletableFuture<T> submit(String accountNo, Supplier<T> command) {
+        if (lanes.length == 0) {
+            try {
+                return CompletableFuture.completedFuture(command.get());
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return CompletableFuture.supplyAsync(command, lanes[laneOf(accountNo)]);
+    }
+
+    /**
+     * Like {@link #submit(String, Supplier)} for a command touching every account in
+     * {@code accountNos}. Each lane involved finishes what was queued on it before and
+     * then holds still; the command runs on the last of them once all have, and the
+     * others resume when it is done.
+     */
+    public <T> CompletableFuture<T> submit(List<String> accountNos, Supplier<T> command) {
+        int[] involved = lanesOf(accountNos);
+        if (involved.length <= 1)
+            return submit(accountNos.isEmpty() ? "" : accountNos.get(0), command);
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CountDownLatch holding = new CountDownLatch(involved.length - 1);
+        // Queued under one lock, in ascending lane order: every lane then sees multi-lane
+        // commands in the same order, so no two of them can wait for each other.
+        synchronized (this) {
+            try {
+                for (int i = 0; i < involved.length - 1; i++) {
+                    lanes[involved[i]].execute(() -> {
+                        holding.countDown();
+                        waitFor(result);
+                    });
+                }
+                lanes[involved[involved.length - 1]].execute(() -> {
+                    try {
+                        holding.await();
+                        result.complete(command.get());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        result.completeExceptionally(e);
+                    } catch (RuntimeException e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Releases the lanes already holding for it.
+                result.completeExceptionally(e);
+                throw e;
+            }
+        }
+        return result;
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * Commands handed to the lanes that have not started yet.
+     */
+    public int getBacklog() {
+        int backlog = 0;
+        for (ThreadPoolExecutor lane : lanes)
+            backlog += lane.getQueue().size();
+        return backlog;
+    }
+
+    // Rejection handler: a full lane makes the caller wait instead of growing its queue.
+    private static void waitForRoom(Runnable command, ThreadPoolExecutor lane) {
+        if (lane.isShutdown())
+            throw new RejectedExecutionException("Lane is shut down");
+        try {
+            lane.getQueue().put(command);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for room on a lane", e);
+        }
+    }
+
+    private static void waitFor(CompletableFuture<?> command) {
+        try {
+            command.join();
+        } catch (CompletionException e) {
+            // Reported to whoever submitted the command
+        }
+    }
+
+    // Distinct lanes of the accounts, ascending.
+    private int[] lanesOf(List<String> accountNos) {
+        if (lanes.length == 0)
+            return new int[0];
+        int[] involved = new int[accountNos.size()];
+        for (int i = 0; i < involved.length; i++)
+            involved[i] = laneOf(accountNos.get(i));
+        Arrays.sort(involved);
+        int distinct = 0;
+        for (int i = 0; i < involved.length; i++) {
+            if (i == 0 || involved[i] != involved[i - 1])
+                involved[distinct++] = involved[i];
+        }
+        return Arrays.copyOf(involved, distinct);
+    }
+
+    private int laneOf(String accountNo) {
+        int h = accountNo.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), lanes.length);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        for (ExecutorService lane : lanes) {
+            lane.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.demo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-command counters and latency histograms for three stages: dequeue to reply sent,
+ * time inside {@link AccountService}, and time publishing the reply. Also logs every
+ * {@code sender.log.sample-every}-th reply to the {@code com.example.demo.replies}
+ * logger, which logback-spring.xml writes through an asynchronous appender.
+ */
+@Component
+public class CommandMetrics {
+
+    private static final Logger replyLog = LoggerFactory.getLogger("com.example.demo.replies");
+
+    public static final int DEPOSIT = 0;
+    public static final int WITHDRAW = 1;
+    public static final int BALANCE = 2;
+    public static final int TRANSFER = 3;
+    public static final int BATCH = 4;
+    public static final int UNKNOWN = 5;
+
+    public static final int DEQUEUE_TO_REPLY = 0;
+    public static final int SERVICE = 1;
+    public static final int PUBLISH = 2;
+
+    private static final String[] COMMANDS = {"DEPOSIT", "WITHDRAW", "BALANCE", "TRANSFER", "BATCH", "UNKNOWN"};
+    private static final String[] STAGES = {"dequeueToReply", "service", "publish"};
+
+    private final LatencyHistogram[][] histograms = new LatencyHistogram[COMMANDS.length][STAGES.length];
+    // Every command per stage since the last drainRecent, for the adaptive listener.
+    private final LatencyHistogram[] recent = new LatencyHistogram[STAGES.length];
+    private final int sampleEvery;
+    private final AtomicLong replies = new AtomicLong();
+    private volatile long since = System.nanoTime();
+
+    @Autowired
+    public CommandMetrics(@Value("${sender.log.sample-every:1000}") int sampleEvery) {
+        this.sampleEvery = sampleEvery;
+        for (LatencyHistogram[] stages : histograms) {
+            for (int stage = 0; stage < stages.length; stage++)
+                stages[stage] = new LatencyHistogram();
+        }
+        for (int stage = 0; stage < recent.length; stage++)
+            recent[stage] = new LatencyHistogram();
+    }
+
+    CommandMetrics() {
+        this(0);
+    }
+
+    public void record(int command, int stage, long nanos) {
+        histograms[command][stage].record(nanos);
+        recent[stage].record(nanos);
+    }
+
+    /**
+     * The {@code quantile} latency in nanoseconds of one stage across all commands since
+     * the previous call, then starts a new interval; 0 if nothing was recorded.
+     */
+    public long drainRecent(int stage, double quantile) {
+        long value = recent[stage].getValueAtQuantile(quantile);
+        recent[stage].reset();
+        return value;
+    }
+
+    /**
+     * Records that a reply left, {@code dequeuedAt} being the {@link System#nanoTime()}
+     * at which its command was taken off INQ, and logs it if it is sampled.
+     */
+    public void replied(int command, long dequeuedAt, Object reply) {
+        record(command, DEQUEUE_TO_REPLY, System.nanoTime() - dequeuedAt);
+        if (sampleEvery > 0 && replies.incrementAndGet() % sampleEvery == 0 && replyLog.isInfoEnabled())
+            replyLog.info("{} reply: {}", COMMANDS[command], describe(reply));
+    }
+
+    /**
+     * Counts, throughput and latency percentiles in microseconds since the last reset.
+     */
+    public Map<String, Object> snapshot() {
+        double seconds = (System.nanoTime() - since) / 1e9;
+        Map<String, Object> commands = new LinkedHashMap<>();
+        for (int command = 0; command < COMMANDS.length; command++) {
+            long count = histograms[command][DEQUEUE_TO_REPLY].getCount();
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            metrics.put("count", count);
+            metrics.put("perSecond", Math.round(count / seconds));
+            for (int stage = 0; stage < STAGES.length; stage++)
+                metrics.put(STAGES[stage], percentiles(histograms[command][stage]));
+            commands.put(COMMANDS[command], metrics);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("seconds", Math.round(seconds * 10) / 10.0);
+        result.put("commands", commands);
+        return result;
+    }
+
+    public void reset() {
+        for (LatencyHistogram[] stages : histograms) {
+            for (LatencyHistogram histogram : stages)
+                histogram.reset();
+        }
+        since = System.nanoTime();
+    }
+
+    private static Map<String, Object> percentiles(LatencyHistogram histogram) {
+        Map<String, Object> micros = new LinkedHashMap<>();
+        micros.put("p50", toMicros(histogram.getValueAtQuantile(0.5)));
+        micros.put("p90", toMicros(histogram.getValueAtQuantile(0.9)));
+        micros.put("p99", toMicros(histogram.getValueAtQuantile(0.99)));
+        micros.put("p999", toMicros(histogram.getValueAtQuantile(0.999)));
+        micros.put("max", toMicros(histogram.getMax()));
+        return micros;
+    }
+
+    private static double toMicros(long nanos) {
+        return Math.round(nanos / 100.0) / 10.0;
+    }
+
+    private static String describe(Object reply) {
+        if (reply instanceof byte[] bytes)
+            return BinaryProtocol.replyStatus(bytes) + " " + BinaryProtocol.replyValue(bytes);
+        return String.valueOf(reply);
+    }
+}
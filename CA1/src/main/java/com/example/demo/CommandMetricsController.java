@@ -0,0 +1,36 @@
+package com.example.demo;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+public class CommandMetricsController {
+
+    @Autowired
+    private CommandMetrics commandMetrics;
+
+    // Present only with sender.adaptive.enabled=true.
+    @Autowired(required = false)
+    private AdaptiveListener adaptiveListener;
+
+    @GetMapping("/metrics/commands")
+    public Map<String, Object> commands() {
+        return commandMetrics.snapshot();
+    }
+
+    @PostMapping("/metrics/commands/reset")
+    public Map<String, Object> reset() {
+        Map<String, Object> last = commandMetrics.snapshot();
+        commandMetrics.reset();
+        return last;
+    }
+
+    @GetMapping("/metrics/listener")
+    public Map<String, Object> listener() {
+        return adaptiveListener != null ? adaptiveListener.snapshot() : Map.of("enabled", false);
+    }
+}
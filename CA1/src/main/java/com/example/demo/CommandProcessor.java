@@ -0,0 +1,436 @@
+package com.example.demo;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies one command to {@link AccountService} and returns the reply for OUTQ.
+ * Text commands ("DEPOSIT acc amount", "WITHDRAW acc amount", "BALANCE acc",
+ * "TRANSFER from to amount") are parsed in place without splitting; binary commands use
+ * {@link BinaryProtocol}.
+ * <p>
+ * "BATCH cmd;cmd;..." runs the listed commands (any but BATCH) atomically: if one fails,
+ * none is applied. The reply is "0 Batch successful" or "&lt;status&gt; Batch failed at
+ * command &lt;n&gt;", followed by ";&lt;reply&gt;" for every command run.
+ * <p>
+ * A request id already recorded for a different command or payload gets
+ * "5 Request id reused for another command" and is not applied.
+ */
+@Component
+public class CommandProcessor {
+
+    public static final int STATUS_OK = 0;
+    public static final int STATUS_INSUFFICIENT_FUNDS = 1;
+    public static final int STATUS_UNKNOWN_ACCOUNT = 2;
+    public static final int STATUS_UNKNOWN_COMMAND = 3;
+    public static final int STATUS_MALFORMED = 4;
+    public static final int STATUS_REQUEST_ID_REUSED = 5;
+
+    static final String DEPOSIT_OK = "0 Deposit successful";
+    static final String WITHDRAW_OK = "0 Withdraw successful";
+    static final String TRANSFER_OK = "0 Transfer successful";
+    static final String BATCH_OK = "0 Batch successful";
+    static final String INSUFFICIENT_FUNDS = "1 Insufficient funds";
+    static final String UNKNOWN_ACCOUNT = "2 Unknown account number";
+    static final String UNKNOWN_COMMAND = "3 Unknown command";
+    static final String MALFORMED = "4 Malformed command";
+    static final String REQUEST_ID_REUSED = "5 Request id reused for another command";
+
+    private static final long NO_AMOUNT = Long.MIN_VALUE;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private CommandMetrics metrics;
+
+    @Autowired
+    private DedupCache dedup;
+
+    CommandProcessor() {
+    }
+
+    CommandProcessor(AccountService accountService) {
+        this(accountService, new DedupCache(0, 0));
+    }
+
+    CommandProcessor(AccountService accountService, DedupCache dedup) {
+        this.accountService = accountService;
+        this.metrics = new CommandMetrics();
+        this.dedup = dedup;
+    }
+
+    public String execute(String message) {
+        return execute(message, DedupCache.NO_REQUEST);
+    }
+
+    /**
+     * Executes a text command; a repeated {@code requestId} gets the first execution's
+     * reply without being applied again.
+     */
+    public String execute(String message, long requestId) {
+        int commandEnd = message.indexOf(' ');
+        if (commandEnd < 0)
+            commandEnd = message.length();
+
+        int accountStart = commandEnd + 1;
+        int accountEnd = accountStart > message.length() ? -1 : message.indexOf(' ', accountStart);
+        if (accountEnd < 0)
+            accountEnd = message.length();
+
+        if (isCommand(message, commandEnd, "BALANCE")) {
+            if (accountEnd <= accountStart)
+                return MALFORMED;
+            String accountNo = message.substring(accountStart, accountEnd);
+            return toText(CommandMetrics.BALANCE, apply(CommandMetrics.BALANCE, accountNo, null, 0, requestId));
+        }
+        if (isCommand(message, commandEnd, "TRANSFER")) {
+            AccountService.Operation transfer = parseOperation(message, 0, message.length());
+            if (transfer == null)
+                return MALFORMED;
+            return toText(CommandMetrics.TRANSFER, apply(CommandMetrics.TRANSFER, transfer.accountNo(),
+                    transfer.toAccountNo(), transfer.amount(), requestId));
+        }
+        if (isCommand(message, commandEnd, "BATCH"))
+            return executeBatch(message, commandEnd + 1, requestId);
+
+        boolean deposit = isCommand(message, commandEnd, "DEPOSIT");
+        if (!deposit && !isCommand(message, commandEnd, "WITHDRAW"))
+            return UNKNOWN_COMMAND;
+
+        int amountEnd = message.indexOf(' ', accountEnd + 1);
+        long amount = accountEnd < message.length()
+                ? parseAmount(message, accountEnd + 1, amountEnd < 0 ? message.length() : amountEnd)
+                : NO_AMOUNT;
+        if (accountEnd <= accountStart || amount == NO_AMOUNT)
+            return MALFORMED;
+
+        String accountNo = message.substring(accountStart, accountEnd);
+        int command = deposit ? CommandMetrics.DEPOSIT : CommandMetrics.WITHDRAW;
+        return toText(command, apply(command, accountNo, null, amount, requestId));
+    }
+
+    private String executeBatch(String message, int start, long requestId) {
+        List<AccountService.Operation> operations = new ArrayList<>();
+        while (start <= message.length()) {
+            int end = message.indexOf(';', start);
+            if (end < 0)
+                end = message.length();
+            AccountService.Operation operation = parseOperation(message, start, end);
+            if (operation == null)
+                return MALFORMED;
+            operations.add(operation);
+            start = end + 1;
+        }
+        if (operations.isEmpty())
+            return MALFORMED;
+
+        AccountService.Outcome outcome = applyBatch(operations, requestId);
+        if (outcome == null)
+            return REQUEST_ID_REUSED;
+        long[] results = outcome.results();
+        StringBuilder reply = new StringBuilder(32 * (results.length + 1));
+        if (outcome.failedAt() < 0)
+            reply.append(BATCH_OK);
+        else
+            reply.append(results[outcome.failedAt()]).append(" Batch failed at command ").append(outcome.failedAt() + 1);
+        for (int i = 0; i < results.length; i++)
+            reply.append(';').append(toText(operations.get(i).command(), results[i]));
+        return reply.toString();
+    }
+
+    /**
+     * Executes a {@link BinaryProtocol} request and returns the encoded reply.
+     */
+    public byte[] execute(byte[] request) {
+        return execute(request, DedupCache.NO_REQUEST);
+    }
+
+    public byte[] execute(byte[] request, long requestId) {
+        if (!BinaryProtocol.isWellFormed(request))
+            return BinaryProtocol.encodeReply(STATUS_MALFORMED, 0);
+        int command = commandOf(request);
+        if (command == CommandMetrics.UNKNOWN)
+            return BinaryProtocol.encodeReply(STATUS_UNKNOWN_COMMAND, 0);
+        if (command == CommandMetrics.BATCH)
+            return executeBatch(request, requestId);
+
+        AccountService.Operation operation = operationOf(request);
+        return encodeResult(command, apply(command, operation.accountNo(), operation.toAccountNo(),
+                operation.amount(), requestId));
+    }
+
+    private byte[] executeBatch(byte[] request, long requestId) {
+        List<byte[]> subRequests = BinaryProtocol.subRequests(request);
+        List<AccountService.Operation> operations = new ArrayList<>(subRequests.size());
+        for (byte[] subRequest : subRequests) {
+            if (commandOf(subRequest) == CommandMetrics.UNKNOWN)
+                return BinaryProtocol.encodeReply(STATUS_MALFORMED, 0);
+            operations.add(operationOf(subRequest));
+        }
+
+        AccountService.Outcome outcome = applyBatch(operations, requestId);
+        if (outcome == null)
+            return BinaryProtocol.encodeReply(STATUS_REQUEST_ID_REUSED, 0);
+        long[] results = outcome.results();
+        List<byte[]> replies = new ArrayList<>(results.length);
+        for (int i = 0; i < results.length; i++)
+            replies.add(encodeResult(operations.get(i).command(), results[i]));
+        int status = outcome.failedAt() < 0 ? STATUS_OK : (int) results[outcome.failedAt()];
+        return BinaryProtocol.encodeBatchReply(status, replies);
+    }
+
+    private static AccountService.Operation operationOf(byte[] request) {
+        int command = commandOf(request);
+        String toAccountNo = command == CommandMetrics.TRANSFER ? BinaryProtocol.toAccountOf(request) : null;
+        return new AccountService.Operation(command, BinaryProtocol.accountOf(request), toAccountNo,
+                BinaryProtocol.amountOf(request));
+    }
+
+    private static byte[] encodeResult(int command, long result) {
+        if (result == DedupCache.REUSED)
+            return BinaryProtocol.encodeReply(STATUS_REQUEST_ID_REUSED, 0);
+        if (command != CommandMetrics.BALANCE)
+            return BinaryProtocol.encodeReply((int) result, 0);
+        return result == -1
+                ? BinaryProtocol.encodeReply(STATUS_UNKNOWN_ACCOUNT, 0)
+                : BinaryProtocol.encodeReply(STATUS_OK, result);
+    }
+
+    /**
+     * Runs a parsed command against {@link AccountService}, or looks up the result of its
+     * first run. The result is the status for DEPOSIT, WITHDRAW and TRANSFER, and the
+     * balance (or -1 for an unknown account) for BALANCE; {@link DedupCache#REUSED} if
+     * {@code requestId} was taken by another command.
+     */
+    private long apply(int command, String accountNo, String toAccountNo, long amount, long requestId) {
+        long fingerprint = DedupCache.UNKNOWN_FINGERPRINT;
+        if (requestId != DedupCache.NO_REQUEST) {
+            fingerprint = DedupCache.fingerprintOf(command, accountNo, toAccountNo, amount);
+            long cached = dedup.get(requestId, command, fingerprint);
+            if (cached != DedupCache.MISSING)
+                return cached;
+        }
+
+        long start = System.nanoTime();
+        long result;
+        if (command == CommandMetrics.DEPOSIT) {
+            accountService.deposit(accountNo, amount, requestId);
+            result = STATUS_OK;
+        } else if (command == CommandMetrics.WITHDRAW) {
+            result = accountService.withdraw(accountNo, amount, requestId);
+        } else if (command == CommandMetrics.TRANSFER) {
+            result = accountService.transfer(accountNo, toAccountNo, amount, requestId);
+        } else {
+            result = accountService.getBalance(accountNo);
+        }
+        metrics.record(command, CommandMetrics.SERVICE, System.nanoTime() - start);
+
+        if (requestId != DedupCache.NO_REQUEST)
+            dedup.put(requestId, command, fingerprint, result);
+        return result;
+    }
+
+    /**
+     * Runs a batch atomically, or returns the outcome of its first run if {@code requestId}
+     * already applied it, or null if {@code requestId} was taken by another command. Only
+     * applied batches are remembered: a failed one changed nothing and may be retried.
+     */
+    private AccountService.Outcome applyBatch(List<AccountService.Operation> operations, long requestId) {
+        long fingerprint = DedupCache.UNKNOWN_FINGERPRINT;
+        if (requestId != DedupCache.NO_REQUEST) {
+            fingerprint = DedupCache.fingerprintOf(operations);
+            long[] cached = dedup.getBatch(requestId, fingerprint);
+            if (cached == DedupCache.REUSED_BATCH)
+                return null;
+            if (cached != null)
+                return new AccountService.Outcome(cached, -1);
+        }
+
+        long start = System.nanoTime();
+        AccountService.Outcome outcome = accountService.apply(operations, AccountJournal.BATCH, requestId);
+        metrics.record(CommandMetrics.BATCH, CommandMetrics.SERVICE, System.nanoTime() - start);
+
+        if (requestId != DedupCache.NO_REQUEST && outcome.failedAt() < 0)
+            dedup.putBatch(requestId, fingerprint, outcome.results());
+        return outcome;
+    }
+
+    private static String toText(int command, long result) {
+        if (result == DedupCache.REUSED)
+            return REQUEST_ID_REUSED;
+        if (command == CommandMetrics.DEPOSIT)
+            return DEPOSIT_OK;
+        if (command == CommandMetrics.BALANCE)
+            return result == -1 ? UNKNOWN_ACCOUNT : "0 Balance:" + result;
+        switch ((int) result) {
+            case 0:
+                return command == CommandMetrics.TRANSFER ? TRANSFER_OK : WITHDRAW_OK;
+            case 1:
+                return INSUFFICIENT_FUNDS;
+            case 2:
+                return UNKNOWN_ACCOUNT;
+            default:
+                return "Unknown error";
+        }
+    }
+
+    /**
+     * The accounts a command refers to, used to keep each account's commands in order:
+     * its second word, the third as well for a TRANSFER, and for a BATCH those of every
+     * command in it. A command without accounts gives {@code [""]}.
+     */
+    public static List<String> accountsOf(String message) {
+        List<String> accounts = new ArrayList<>(2);
+        int commandEnd = message.indexOf(' ');
+        if (commandEnd >= 0 && isCommand(message, commandEnd, "BATCH")) {
+            for (int start = commandEnd + 1, end; start <= message.length(); start = end + 1) {
+                end = message.indexOf(';', start);
+                if (end < 0)
+                    end = message.length();
+                addAccounts(message, start, end, accounts);
+            }
+        } else {
+            addAccounts(message, 0, message.length(), accounts);
+        }
+        if (accounts.isEmpty())
+            accounts.add("");
+        return accounts;
+    }
+
+    // Adds the accounts of the single command in message[start, end).
+    private static void addAccounts(String message, int start, int end, List<String> accounts) {
+        int commandEnd = wordEnd(message, start, end);
+        if (commandEnd == end)
+            return;
+        int accountEnd = wordEnd(message, commandEnd + 1, end);
+        accounts.add(message.substring(commandEnd + 1, accountEnd));
+        if (accountEnd < end && isCommand(message, start, commandEnd, "TRANSFER"))
+            accounts.add(message.substring(accountEnd + 1, wordEnd(message, accountEnd + 1, end)));
+    }
+
+    private static int wordEnd(String message, int start, int end) {
+        int space = message.indexOf(' ', start);
+        return space < 0 || space > end ? end : space;
+    }
+
+    /**
+     * The {@link CommandMetrics} command a text message is counted under.
+     */
+    public static int commandOf(String message) {
+        int commandEnd = message.indexOf(' ');
+        if (commandEnd < 0)
+            commandEnd = message.length();
+        if (isCommand(message, commandEnd, "DEPOSIT"))
+            return CommandMetrics.DEPOSIT;
+        if (isCommand(message, commandEnd, "WITHDRAW"))
+            return CommandMetrics.WITHDRAW;
+        if (isCommand(message, commandEnd, "BALANCE"))
+            return CommandMetrics.BALANCE;
+        if (isCommand(message, commandEnd, "TRANSFER"))
+            return CommandMetrics.TRANSFER;
+        if (isCommand(message, commandEnd, "BATCH"))
+            return CommandMetrics.BATCH;
+        return CommandMetrics.UNKNOWN;
+    }
+
+    /**
+     * The {@link CommandMetrics} command a binary request is counted under.
+     */
+    public static int commandOf(byte[] request) {
+        if (request.length == 0)
+            return CommandMetrics.UNKNOWN;
+        switch (request[0]) {
+            case BinaryProtocol.DEPOSIT:
+                return CommandMetrics.DEPOSIT;
+            case BinaryProtocol.WITHDRAW:
+                return CommandMetrics.WITHDRAW;
+            case BinaryProtocol.BALANCE:
+                return CommandMetrics.BALANCE;
+            case BinaryProtocol.TRANSFER:
+                return CommandMetrics.TRANSFER;
+            case BinaryProtocol.BATCH:
+                return CommandMetrics.BATCH;
+            default:
+                return CommandMetrics.UNKNOWN;
+        }
+    }
+
+    private static boolean isCommand(String message, int commandEnd, String command) {
+        return isCommand(message, 0, commandEnd, command);
+    }
+
+    private static boolean isCommand(String message, int start, int commandEnd, String command) {
+        return commandEnd - start == command.length() && message.startsWith(command, start);
+    }
+
+    /**
+     * Parses exactly one DEPOSIT, WITHDRAW, BALANCE or TRANSFER from {@code message[start, end)},
+     * or returns null if it is anything else, has missing or extra words, or transfers a
+     * negative amount.
+     */
+    private static AccountService.Operation parseOperation(String message, int start, int end) {
+        int[] wordEnds = new int[5];
+        int words = 0;
+        for (int i = start; words < wordEnds.length; i = wordEnds[words - 1] + 1) {
+            int wordEnd = message.indexOf(' ', i);
+            wordEnds[words++] = wordEnd < 0 || wordEnd > end ? end : wordEnd;
+            if (wordEnds[words - 1] == i)
+                return null;
+            if (wordEnds[words - 1] == end)
+                break;
+        }
+
+        int command;
+        int expected;
+        if (isCommand(message, start, wordEnds[0], "DEPOSIT")) {
+            command = CommandMetrics.DEPOSIT;
+            expected = 3;
+        } else if (isCommand(message, start, wordEnds[0], "WITHDRAW")) {
+            command = CommandMetrics.WITHDRAW;
+            expected = 3;
+        } else if (isCommand(message, start, wordEnds[0], "BALANCE")) {
+            command = CommandMetrics.BALANCE;
+            expected = 2;
+        } else if (isCommand(message, start, wordEnds[0], "TRANSFER")) {
+            command = CommandMetrics.TRANSFER;
+            expected = 4;
+        } else {
+            return null;
+        }
+        if (words != expected || wordEnds[words - 1] != end)
+            return null;
+
+        String accountNo = message.substring(wordEnds[0] + 1, wordEnds[1]);
+        if (command == CommandMetrics.BALANCE)
+            return new AccountService.Operation(command, accountNo, null, 0);
+        String toAccountNo = command == CommandMetrics.TRANSFER ? message.substring(wordEnds[1] + 1, wordEnds[2]) : null;
+        long amount = parseAmount(message, wordEnds[words - 2] + 1, end);
+        if (amount == NO_AMOUNT || command == CommandMetrics.TRANSFER && amount < 0)
+            return null;
+        return new AccountService.Operation(command, accountNo, toAccountNo, amount);
+    }
+
+    /**
+     * Parses a signed decimal of at most 18 digits from {@code message[start, end)}, or
+     * returns {@link #NO_AMOUNT} if the range is empty, not a number or too long.
+     */
+    private static long parseAmount(String message, int start, int end) {
+        boolean negative = start < end && message.charAt(start) == '-';
+        int i = negative ? start + 1 : start;
+        if (i >= end || end - i > 18)
+            return NO_AMOUNT;
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = message.charAt(i) - '0';
+            if (digit < 0 || digit > 9)
+                return NO_AMOUNT;
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+}
@@ -0,0 +1,398 @@
+package com.example.demo;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Results of recently executed requests, by request id, so that a redelivered command
+ * is answered again without being applied twice; a BATCH keeps the result of every
+ * command in it. Each entry also keeps a fingerprint of the command's payload, so an
+ * id resent with a different command is rejected as {@link #REUSED} rather than answered
+ * with another command's result or applied under an id that is already taken.
+ * <p>
+ * Ids are spread over independently locked stripes of at least 1024 entries each, so
+ * lanes looking up different ids rarely contend. Entries live in each stripe's ring in
+ * arrival order, which is both their size and their age order: recording an id again
+ * never moves it, and a stripe's oldest entry goes when the stripe's share of
+ * {@code sender.dedup.capacity} is reached or once it is older than
+ * {@code sender.dedup.ttl-ms}. Lookups go through an open-addressing index of primitive
+ * ids. A capacity of 0 disables the cache.
+ * <p>
+ * With the journal enabled the cache survives restarts: each deposit/withdraw record
+ * carries its request id, and every journal snapshot also writes the cache next to it.
+ */
+@Component
+public class DedupCache {
+
+    public static final long NO_REQUEST = 0;
+    public static final long MISSING = Long.MIN_VALUE;
+    /**
+     * Returned by {@link #get} for an id recorded with a different command or payload.
+     */
+    public static final long REUSED = Long.MIN_VALUE + 1;
+    /**
+     * Returned by {@link #getBatch} for an id recorded with anything but this BATCH.
+     */
+    public static final long[] REUSED_BATCH = new long[0];
+    /**
+     * Fingerprint of an entry whose payload is not known, such as one restored from a
+     * file or journal written before fingerprints were kept; it matches any payload.
+     */
+    public static final long UNKNOWN_FINGERPRINT = 0;
+
+    private static final int FILE_MAGIC = 0x44445550; // "DDUP"
+    private static final int FILE_VERSION = 3;
+    private static final int MAX_STRIPES = 16;
+    private static final int MIN_STRIPE_CAPACITY = 1024;
+
+    private final int capacity;
+    private final long ttlMillis;
+    private final Stripe[] stripes;
+
+    @Autowired
+    public DedupCache(@Value("${sender.dedup.capacity:65536}") int capacity,
+                      @Value("${sender.dedup.ttl-ms:600000}") long ttlMillis) {
+        this.capacity = capacity;
+        this.ttlMillis = ttlMillis;
+        int stripeCount = 1;
+        while (stripeCount < MAX_STRIPES && capacity / (stripeCount * 2) >= MIN_STRIPE_CAPACITY)
+            stripeCount <<= 1;
+        stripes = new Stripe[capacity == 0 ? 0 : stripeCount];
+        for (int i = 0; i < stripes.length; i++)
+            stripes[i] = new Stripe((capacity + stripes.length - 1) / stripes.length, ttlMillis);
+    }
+
+    /**
+     * Fingerprint of a single command's payload; text and binary forms of one command
+     * have the same one. Never {@link #UNKNOWN_FINGERPRINT}.
+     */
+    public static long fingerprintOf(int command, String accountNo, String toAccountNo, long amount) {
+        return known(fingerprintOf(UNKNOWN_FINGERPRINT, command, accountNo, toAccountNo, amount));
+    }
+
+    /**
+     * Fingerprint of a BATCH's payload, or of a TRANSFER as its single operation.
+     */
+    public static long fingerprintOf(List<AccountService.Operation> operations) {
+        long fingerprint = UNKNOWN_FINGERPRINT;
+        for (AccountService.Operation operation : operations) {
+            fingerprint = fingerprintOf(fingerprint, operation.command(), operation.accountNo(),
+                    operation.toAccountNo(), operation.amount());
+        }
+        return known(fingerprint);
+    }
+
+    /**
+     * The result recorded for {@code requestId} if it has not expired and was the same
+     * command with the same payload, {@link #REUSED} if it was another one, otherwise
+     * {@link #MISSING}.
+     */
+    public long get(long requestId, int command, long fingerprint) {
+        if (capacity == 0)
+            return MISSING;
+        Stripe stripe = stripeOf(requestId);
+        stripe.lock.lock();
+        try {
+            stripe.evictExpired(System.currentTimeMillis());
+            int position = stripe.positionOf(requestId);
+            if (position < 0)
+                return MISSING;
+            if (stripe.commands[position] != command || !matches(stripe.fingerprints[position], fingerprint))
+                return REUSED;
+            return stripe.results[position];
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * The results recorded for the BATCH {@code requestId}, {@link #REUSED_BATCH} if the id
+     * was recorded for another command or payload, or null if it is not recorded. A batch
+     * restored from files written before results were kept has none to give back.
+     */
+    public long[] getBatch(long requestId, long fingerprint) {
+        if (capacity == 0)
+            return null;
+        Stripe stripe = stripeOf(requestId);
+        stripe.lock.lock();
+        try {
+            stripe.evictExpired(System.currentTimeMillis());
+            int position = stripe.positionOf(requestId);
+            if (position < 0)
+                return null;
+            if (stripe.commands[position] != CommandMetrics.BATCH || !matches(stripe.fingerprints[position], fingerprint))
+                return REUSED_BATCH;
+            long[] commandResults = stripe.batchResults[position];
+            return commandResults != null ? commandResults : new long[0];
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public void put(long requestId, int command, long fingerprint, long result) {
+        put(requestId, command, fingerprint, result, null, System.currentTimeMillis());
+    }
+
+    /**
+     * Records a BATCH applied with the given {@code results}, one per command in it.
+     */
+    public void putBatch(long requestId, long fingerprint, long[] results) {
+        put(requestId, CommandMetrics.BATCH, fingerprint, CommandProcessor.STATUS_OK, results,
+                System.currentTimeMillis());
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.size;
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    private void put(long requestId, int command, long fingerprint, long result, long[] commandResults, long time) {
+        if (capacity == 0 || requestId == NO_REQUEST)
+            return;
+        Stripe stripe = stripeOf(requestId);
+        stripe.lock.lock();
+        try {
+            stripe.put(requestId, command, fingerprint, result, commandResults, time);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the live entries to {@code file}, replacing it atomically. Every stripe is
+     * locked, in ascending order, for the whole write, so the file holds one instant.
+     */
+    void write(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        for (Stripe stripe : stripes)
+            stripe.lock.lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            long now = System.currentTimeMillis();
+            int size = 0;
+            for (Stripe stripe : stripes) {
+                stripe.evictExpired(now);
+                size += stripe.size;
+            }
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(size);
+            for (Stripe stripe : stripes)
+                stripe.write(out);
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--)
+                stripes[i].lock.unlock();
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Adds the unexpired entries of a file written by {@link #write}, or by the versions
+     * before it: version 2 kept no fingerprints, version 1 no BATCH results either.
+     */
+    void read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != FILE_MAGIC)
+                throw new IOException("Not a dedup cache file");
+            int version = in.readInt();
+            if (version < 1 || version > FILE_VERSION)
+                throw new IOException("Unsupported dedup cache file version " + version);
+            long oldest = System.currentTimeMillis() - ttlMillis;
+            for (int count = in.readInt(); count > 0; count--) {
+                long id = in.readLong();
+                long time = in.readLong();
+                int command = in.readByte();
+                long fingerprint = version < 3 ? UNKNOWN_FINGERPRINT : in.readLong();
+                long result = in.readLong();
+                long[] commandResults = null;
+                int length = version == 1 ? -1 : in.readInt();
+                if (length >= 0) {
+                    commandResults = new long[length];
+                    for (int i = 0; i < length; i++)
+                        commandResults[i] = in.readLong();
+                }
+                if (time >= oldest)
+                    put(id, command, fingerprint, result, commandResults, time);
+            }
+        }
+    }
+
+    private Stripe stripeOf(long requestId) {
+        // The high bits, so that the stripe does not pick the index slots within it.
+        return stripes[(int) (AccountTable.mix(requestId) >>> 32) & (stripes.length - 1)];
+    }
+
+    private static boolean matches(long recorded, long fingerprint) {
+        return recorded == UNKNOWN_FINGERPRINT || fingerprint == UNKNOWN_FINGERPRINT || recorded == fingerprint;
+    }
+
+    private static long fingerprintOf(long fingerprint, int command, String accountNo, String toAccountNo, long amount) {
+        fingerprint = AccountTable.mix(fingerprint ^ command);
+        fingerprint = AccountTable.mix(fingerprint ^ hashOf(accountNo));
+        fingerprint = AccountTable.mix(fingerprint ^ (toAccountNo == null ? 0 : hashOf(toAccountNo)));
+        return AccountTable.mix(fingerprint ^ amount);
+    }
+
+    private static long hashOf(String s) {
+        long hash = 1125899906842597L;
+        for (int i = 0; i < s.length(); i++)
+            hash = 31 * hash + s.charAt(i);
+        return hash;
+    }
+
+    private static long known(long fingerprint) {
+        return fingerprint != UNKNOWN_FINGERPRINT ? fingerprint : 1;
+    }
+
+    /**
+     * One ring of entries with its index, guarded by its own lock.
+     */
+    private static final class Stripe {
+
+        final ReentrantLock lock = new ReentrantLock();
+        final int capacity;
+        final long ttlMillis;
+
+        // Ring of entries, oldest at head.
+        final long[] ids;
+        final long[] times;
+        final byte[] commands;
+        final long[] fingerprints;
+        final long[] results;
+        final long[][] batchResults;
+        int head;
+        int size;
+
+        // Open-addressing index from id to ring position; id 0 marks a free slot.
+        final long[] indexIds;
+        final int[] indexPositions;
+
+        Stripe(int capacity, long ttlMillis) {
+            this.capacity = capacity;
+            this.ttlMillis = ttlMillis;
+            ids = new long[capacity];
+            times = new long[capacity];
+            commands = new byte[capacity];
+            fingerprints = new long[capacity];
+            results = new long[capacity];
+            batchResults = new long[capacity][];
+            int indexSize = 2;
+            while (indexSize < capacity * 2)
+                indexSize <<= 1;
+            indexIds = new long[indexSize];
+            indexPositions = new int[indexIds.length];
+        }
+
+        // Ring position of the id, or -1. Caller holds lock.
+        int positionOf(long id) {
+            int slot = slotOf(id);
+            return indexIds[slot] == id ? indexPositions[slot] : -1;
+        }
+
+        // An id already present keeps its place and time, so the ring stays in age order.
+        // Caller holds lock.
+        void put(long id, int command, long fingerprint, long result, long[] commandResults, long time) {
+            evictExpired(System.currentTimeMillis());
+            int slot = slotOf(id);
+            int position;
+            if (indexIds[slot] == id) {
+                position = indexPositions[slot];
+            } else {
+                if (size == capacity) {
+                    removeHead();
+                    slot = slotOf(id);
+                }
+                position = (head + size) % capacity;
+                size++;
+                indexIds[slot] = id;
+                indexPositions[slot] = position;
+                ids[position] = id;
+                times[position] = time;
+            }
+            commands[position] = (byte) command;
+            fingerprints[position] = fingerprint;
+            results[position] = result;
+            batchResults[position] = commandResults;
+        }
+
+        // Caller holds lock.
+        void write(DataOutputStream out) throws IOException {
+            for (int i = 0; i < size; i++) {
+                int position = (head + i) % capacity;
+                out.writeLong(ids[position]);
+                out.writeLong(times[position]);
+                out.writeByte(commands[position]);
+                out.writeLong(fingerprints[position]);
+                out.writeLong(results[position]);
+                long[] commandResults = batchResults[position];
+                out.writeInt(commandResults == null ? -1 : commandResults.length);
+                if (commandResults != null) {
+                    for (long commandResult : commandResults)
+                        out.writeLong(commandResult);
+                }
+            }
+        }
+
+        // Caller holds lock.
+        void evictExpired(long now) {
+            while (size > 0 && times[head] < now - ttlMillis)
+                removeHead();
+        }
+
+        private void removeHead() {
+            removeFromIndex(ids[head]);
+            batchResults[head] = null;
+            head = (head + 1) % capacity;
+            size--;
+        }
+
+        private int slotOf(long id) {
+            int mask = indexIds.length - 1;
+            int slot = (int) AccountTable.mix(id) & mask;
+            while (indexIds[slot] != id && indexIds[slot] != 0)
+                slot = (slot + 1) & mask;
+            return slot;
+        }
+
+        // Backward-shift deletion keeps every probe chain unbroken without tombstones.
+        private void removeFromIndex(long id) {
+            int mask = indexIds.length - 1;
+            int hole = slotOf(id);
+            if (indexIds[hole] != id)
+                return;
+            for (int next = (hole + 1) & mask; indexIds[next] != 0; next = (next + 1) & mask) {
+                int home = (int) AccountTable.mix(indexIds[next]) & mask;
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    indexIds[hole] = indexIds[next];
+                    indexPositions[hole] = indexPositions[next];
+                    hole = next;
+                }
+            }
+            indexIds[hole] = 0;
+        }
+    }
+}
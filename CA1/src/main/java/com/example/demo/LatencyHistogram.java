@@ -0,0 +1,84 @@
+package com.example.demo;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram of nanosecond latencies in the style of HdrHistogram:
+ * each power of two is split into 32 buckets, so any recorded value is reported within
+ * about 3% of its true value, from 1 ns up to {@link Long#MAX_VALUE}, in a fixed 15 KB.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(indexOf(value));
+        long previous = max.get();
+        while (value > previous && !max.compareAndSet(previous, value))
+            previous = max.get();
+    }
+
+    long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            count += counts.get(i);
+        return count;
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    /**
+     * The smallest recorded value that {@code quantile} of the samples do not exceed, rounded
+     * up to its bucket; 0 when empty.
+     */
+    long getValueAtQuantile(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank)
+                return Math.min(highestValueOf(i), max.get());
+        }
+        return max.get();
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+        max.set(0);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        int top = (int) (value >>> exponent);
+        return SUB_BUCKETS + (exponent - 1) * HALF + (top - HALF);
+    }
+
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int exponent = (index - SUB_BUCKETS) / HALF + 1;
+        long top = (index - SUB_BUCKETS) % HALF + HALF;
+        return ((top + 1) << exponent) - 1;
+    }
+}
@@ -1,78 +1,434 @@
 package com.example.demo;
 
+import jakarta.jms.BytesMessage;
+import jakarta.jms.Connection;
+import jakarta.jms.ConnectionFactory;
+import jakarta.jms.Destination;
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+import jakarta.jms.MessageConsumer;
+import jakarta.jms.MessageProducer;
+import jakarta.jms.Session;
+import jakarta.jms.TextMessage;
+import org.apache.activemq.artemis.api.jms.ActiveMQJMSConstants;
+import org.apache.activemq.artemis.jms.client.ActiveMQConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jms.annotation.JmsListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jms.connection.CachingConnectionFactory;
 import org.springframework.jms.core.JmsTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Consumes INQ and hands each command to its per-account lanes without waiting for it,
+ * so commands for different accounts run, and are journaled, at the same time. Every
+ * consumer keeps the commands it handed over in arrival order and acknowledges them
+ * individually from the front once they are applied, journaled and answered. A crash
+ * therefore redelivers only unacknowledged commands, and the {@link DedupCache} answers
+ * any of those that were applied with their first reply. A consumer has at most
+ * {@code sender.max-in-flight} commands outstanding.
+ * <p>
+ * Lanes do not wait for the journal either: a lane goes on to its next command, and the
+ * reply is sent once the flusher's next fsync covers the record, so one fsync commits
+ * whatever every lane journaled in the meantime.
+ * <p>
+ * One consumer ({@code sender.consumers=1}) keeps INQ order, so one account's commands
+ * reach its lane in the order they were sent. More consumers keep that order only for
+ * clients that set {@code JMSXGroupID} to the account number, which Artemis delivers to
+ * one consumer, as {@link CommandClient} does. {@link AdaptiveListener} may change the consumer count and the Artemis
+ * {@code consumerWindowSize} (prefetch) at any time. A consumer given a new window
+ * finishes and acknowledges its commands in flight, then reconnects with that window;
+ * it hands back only messages it had prefetched but not yet received.
+ * Replaced by {@link BatchConsumer} when {@code sender.batch.enabled=true}.
+ */
 @Component
-public class Sender {
+@ConditionalOnProperty(name = "sender.batch.enabled", havingValue = "false", matchIfMissing = true)
+public class Sender implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(Sender.class);
+
+    /**
+     * Long message property naming a request; a resent request with the same id is
+     * answered from {@link DedupCache} instead of being applied again. Ids must be non-zero.
+     */
+    public static final String REQUEST_ID = "RequestId";
+
+    private static final long IDLE_RECEIVE_MS = 1000;
+    // Longest wait for the next message while commands are in flight, so answered ones
+    // are acknowledged promptly when INQ is quiet.
+    private static final long ACK_POLL_MS = 1;
+    private static final int PUBLISHERS = 4;
 
     @Autowired
-    private AccountService accountService;
+    private ConnectionFactory connectionFactory;
+
+    @Autowired
+    private CommandProcessor commandProcessor;
 
     @Autowired
     private JmsTemplate jmsTemplate;
 
-    @JmsListener(destination = "INQ")
-    public void receiveMessage(String message) {
+    @Autowired
+    private CommandLanes commandLanes;
 
-        String[] parts = message.split(" ");
-        String command = parts[0];
+    @Autowired
+    private AccountJournal journal;
 
-        if(command.equals("DEPOSIT")) {
+    @Autowired
+    private CommandMetrics metrics;
 
-            accountService.deposit(parts[1], Integer.parseInt(parts[2]));
+    @Value("${sender.consumers:1}")
+    private int consumers;
 
-            System.out.println("0 Deposit successful");
+    @Value("${sender.max-in-flight:1024}")
+    private int maxInFlight;
 
-            jmsTemplate.convertAndSend("OUTQ", "0 Deposit successful");
+    // Resolved once: Artemis answers every createQueue with a blocking round trip to the broker.
+    private volatile Destination outq;
 
-        } else if(command.equals("WITHDRAW")) {
+    // Sends the replies of commands that were not yet on disk when they ran; idle threads exit.
+    private final ThreadPoolExecutor publishers = publishers();
 
-            int result = accountService.withdraw(parts[1], Integer.parseInt(parts[2]));
+    private final List<Worker> workers = new ArrayList<>();
+    private ActiveMQConnectionFactory artemis;
+    private int window;
+    private int started;
+    private boolean running;
 
-            String responseMessage;
-            if(result == 0) {
-                responseMessage = "0 Withdraw successful";
-            } else if (result == 1) {
-                responseMessage = "1 Insufficient funds";
-            } else if (result == 2) {
-                responseMessage = "2 Unknown account number";
-            }
-            else {
-                responseMessage = "Unknown error";
-            }
+    Sender() {
+    }
 
-            System.out.println(responseMessage);
+    Sender(CommandProcessor commandProcessor, JmsTemplate jmsTemplate, CommandLanes commandLanes,
+           AccountJournal journal, int maxInFlight) {
+        this.commandProcessor = commandProcessor;
+        this.jmsTemplate = jmsTemplate;
+        this.commandLanes = commandLanes;
+        this.journal = journal;
+        this.metrics = new CommandMetrics();
+        this.maxInFlight = maxInFlight;
+    }
 
-            jmsTemplate.convertAndSend("OUTQ", responseMessage);
+    @Override
+    public synchronized void start() {
+        if (connectionFactory instanceof CachingConnectionFactory caching)
+            artemis = caching.getTargetConnectionFactory() instanceof ActiveMQConnectionFactory target ? target : null;
+        else
+            artemis = connectionFactory instanceof ActiveMQConnectionFactory target ? target : null;
+        // Acknowledging one message at a time is an Artemis extension of JMS.
+        if (artemis == null)
+            throw new IllegalStateException("Sender needs an Artemis connection factory");
+        if (window <= 0)
+            window = artemis.getConsumerWindowSize();
+        running = true;
+        resizeWorkers();
+    }
 
-        } else if(command.equals("BALANCE")) {
+    @Override
+    public void stop() {
+        List<Worker> stopping;
+        synchronized (this) {
+            running = false;
+            stopping = new ArrayList<>(workers);
+            workers.clear();
+        }
+        for (Worker worker : stopping)
+            worker.stop();
+        for (Worker worker : stopping)
+            worker.join();
+    }
 
-            int balance = accountService.getBalance(parts[1]);
-            String responseMessage;
+    @Override
+    public synchronized boolean isRunning() {
+        return running;
+    }
 
-            if(balance == -1) {
-                responseMessage = "2 Unknown account number";
-            }
-            else {
-                responseMessage = "0 Balance:" + balance;
+    /**
+     * Sets the number of INQ consumers; while running, consumers are started or stopped
+     * at once, and a stopped one first answers and acknowledges its commands in flight.
+     */
+    public synchronized void setConsumers(int consumers) {
+        this.consumers = Math.max(1, consumers);
+        if (running)
+            resizeWorkers();
+    }
+
+    public synchronized int getConsumers() {
+        return consumers;
+    }
+
+    /**
+     * Sets the Artemis {@code consumerWindowSize} in bytes; every consumer reconnects with
+     * it once its commands in flight are acknowledged.
+     */
+    public synchronized void setWindow(int window) {
+        this.window = window;
+    }
+
+    public synchronized int getWindow() {
+        return window;
+    }
+
+    // Caller holds this.
+    private void resizeWorkers() {
+        while (workers.size() < consumers) {
+            Worker worker = new Worker("inq-consumer-" + started++);
+            workers.add(worker);
+            worker.start();
+        }
+        while (workers.size() > consumers)
+            workers.remove(workers.size() - 1).stop();
+    }
+
+    /**
+     * Receives the next command, if one arrives in time, and hands it to its lanes, then
+     * acknowledges the answered commands at the front of {@code inFlight}. With
+     * {@code sender.max-in-flight} commands outstanding it first waits for the oldest.
+     * Returns whether a command arrived. A failed command is not acknowledged: it fails
+     * the call, and the consumer reconnects so that the broker redelivers it.
+     */
+    boolean pump(MessageConsumer consumer, ArrayDeque<InFlight> inFlight) throws JMSException {
+        if (inFlight.size() >= maxInFlight)
+            inFlight.peek().reply().exceptionally(e -> null).join();
+        Message message = consumer.receive(inFlight.isEmpty() ? IDLE_RECEIVE_MS : ACK_POLL_MS);
+        if (message != null)
+            inFlight.add(new InFlight(message, dispatch(message)));
+        while (!inFlight.isEmpty() && inFlight.peek().reply().isDone()) {
+            InFlight command = inFlight.poll();
+            command.reply().join();
+            command.message().acknowledge();
+        }
+        return message != null;
+    }
+
+    /**
+     * Waits for every command in flight and acknowledges the ones that were answered.
+     */
+    private static void settle(ArrayDeque<InFlight> inFlight) {
+        for (InFlight command : inFlight) {
+            try {
+                command.reply().join();
+                command.message().acknowledge();
+            } catch (JMSException | RuntimeException e) {
+                // Left to the broker to redeliver; the DedupCache answers it if it was applied.
             }
+        }
+        inFlight.clear();
+    }
 
-            System.out.println(responseMessage);
+    private CompletableFuture<Void> dispatch(Message message) throws JMSException {
+        long dequeuedAt = System.nanoTime();
+        String correlationId = correlationIdOf(message);
+        long requestId = requestIdOf(message);
+        Destination replyTo = message.getJMSReplyTo();
+        if (message instanceof BytesMessage) {
+            byte[] request = message.getBody(byte[].class);
+            int command = CommandProcessor.commandOf(request);
+            return commandLanes.submit(BinaryProtocol.accountsOf(request), () -> {
+                Object reply = commandProcessor.execute(request, requestId);
+                return whenDurable(() -> reply(reply, command, dequeuedAt, correlationId, replyTo));
+            }).thenCompose(Function.identity());
+        }
+        String text = message instanceof TextMessage textMessage ? textMessage.getText() : message.getBody(String.class);
+        int command = CommandProcessor.commandOf(text);
+        return commandLanes.submit(CommandProcessor.accountsOf(text), () -> {
+            Object reply = commandProcessor.execute(text, requestId);
+            return whenDurable(() -> reply(reply, command, dequeuedAt, correlationId, replyTo));
+        }).thenCompose(Function.identity());
+    }
 
-            jmsTemplate.convertAndSend("OUTQ", responseMessage);
+    /**
+     * Runs {@code send} once everything the lane has journaled is on disk: at once on the
+     * lane when it already is, which it always is without a journal, and otherwise on a
+     * publisher after the flusher's fsync, so the journal's flusher only signals and never
+     * publishes.
+     */
+    private CompletableFuture<Void> whenDurable(Runnable send) {
+        CompletableFuture<Void> durable = journal.whenDurable();
+        if (!durable.isDone())
+            return durable.thenRunAsync(send, publishers);
+        send.run();
+        return durable;
+    }
 
+    /**
+     * Sends the reply to the request's JMSReplyTo, or to OUTQ when it has none.
+     */
+    private void reply(Object reply, int command, long dequeuedAt, String correlationId, Destination replyTo) {
+        long start = System.nanoTime();
+        if (replyTo == null) {
+            jmsTemplate.send(outq(), session -> replyMessage(session, reply, correlationId));
+        } else {
+            // One anonymous producer serves every client's reply queue; a producer per
+            // destination would pile up in the session cache as temporary queues come and go.
+            jmsTemplate.execute(session -> {
+                MessageProducer producer = session.createProducer(null);
+                try {
+                    producer.send(replyTo, replyMessage(session, reply, correlationId));
+                } finally {
+                    producer.close();
+                }
+                return null;
+            }, false);
         }
-        else {
-            String responseMessage;
-            responseMessage = "3 Unknown command";
-            System.out.println(responseMessage);
+        metrics.record(command, CommandMetrics.PUBLISH, System.nanoTime() - start);
+        metrics.replied(command, dequeuedAt, reply);
+    }
+
+    private Destination outq() {
+        Destination destination = outq;
+        if (destination == null)
+            outq = destination = jmsTemplate.execute(session -> session.createQueue("OUTQ"));
+        return destination;
+    }
+
+    /**
+     * The {@link #REQUEST_ID} property, or else an id derived from the JMSMessageID, which
+     * a redelivery keeps: a command redelivered after a rollback or crash is then answered
+     * from the {@link DedupCache} instead of applied again. Only a client that resends a
+     * command as a new message needs to set {@link #REQUEST_ID} itself.
+     */
+    static long requestIdOf(Message request) throws JMSException {
+        if (request.propertyExists(REQUEST_ID))
+            return request.getLongProperty(REQUEST_ID);
+        String messageId = request.getJMSMessageID();
+        return messageId != null ? idOf(messageId) : DedupCache.NO_REQUEST;
+    }
 
-            jmsTemplate.convertAndSend("OUTQ", responseMessage);
+    // 64-bit FNV-1a, wide enough that the message ids in the cache do not collide.
+    private static long idOf(String messageId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < messageId.length(); i++) {
+            hash ^= messageId.charAt(i);
+            hash *= 0x100000001b3L;
         }
+        return hash != DedupCache.NO_REQUEST ? hash : 1;
+    }
+
+    /**
+     * The id a reply is correlated by: the request's correlation id, or its message id
+     * when it has none, as in the usual JMS request/reply pattern.
+     */
+    static String correlationIdOf(Message request) throws JMSException {
+        String correlationId = request.getJMSCorrelationID();
+        return correlationId != null ? correlationId : request.getJMSMessageID();
+    }
+
+    /**
+     * A text reply for a String, a binary one for a byte[].
+     */
+    static Message replyMessage(Session session, Object reply, String correlationId) throws JMSException {
+        Message message;
+        if (reply instanceof byte[] bytes) {
+            BytesMessage binary = session.createBytesMessage();
+            binary.writeBytes(bytes);
+            message = binary;
+        } else {
+            message = session.createTextMessage((String) reply);
+        }
+        if (correlationId != null)
+            message.setJMSCorrelationID(correlationId);
+        return message;
+    }
+
+    private static ActiveMQConnectionFactory resize(ActiveMQConnectionFactory factory, int window) {
+        ActiveMQConnectionFactory resized = new ActiveMQConnectionFactory(false, factory.getStaticConnectors());
+        resized.setUser(factory.getUser());
+        resized.setPassword(factory.getPassword());
+        resized.setConsumerWindowSize(window);
+        return resized;
+    }
 
+    private static ThreadPoolExecutor publishers() {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor publishers = new ThreadPoolExecutor(PUBLISHERS, PUBLISHERS, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "reply-publisher-" + count.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        publishers.allowCoreThreadTimeOut(true);
+        return publishers;
     }
 
+    /**
+     * A command handed to the lanes and not yet acknowledged.
+     */
+    record InFlight(Message message, CompletableFuture<Void> reply) {
+    }
+
+    /**
+     * One INQ consumer on a connection of its own, which it reopens after a failure and
+     * whenever the window changes. Artemis fixes a factory's window once it is used, so
+     * every connection comes from a factory of its own.
+     */
+    private final class Worker implements Runnable {
+
+        private final Thread thread;
+        private volatile boolean consuming = true;
+
+        Worker(String name) {
+            thread = new Thread(this, name);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        void stop() {
+            consuming = false;
+        }
+
+        void join() {
+            try {
+                thread.join(10_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run() {
+            long backoffMs = 100;
+            while (consuming) {
+                int openedWindow = getWindow();
+                ArrayDeque<InFlight> inFlight = new ArrayDeque<>();
+                try (ActiveMQConnectionFactory factory = resize(artemis, openedWindow);
+                     Connection connection = factory.createConnection()) {
+                    Session session = connection.createSession(false, ActiveMQJMSConstants.INDIVIDUAL_ACKNOWLEDGE);
+                    MessageConsumer consumer = session.createConsumer(session.createQueue("INQ"));
+                    connection.start();
+                    backoffMs = 100;
+                    try {
+                        while (consuming && openedWindow == getWindow())
+                            pump(consumer, inFlight);
+                    } finally {
+                        settle(inFlight);
+                    }
+                } catch (JMSException | RuntimeException e) {
+                    if (!consuming)
+                        return;
+                    log.warn("INQ consumer failed, reconnecting in {} ms", backoffMs, e);
+                    try {
+                        Thread.sleep(backoffMs);
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                    backoffMs = Math.min(backoffMs * 2, 5000);
+                }
+            }
+        }
+    }
 }
\ No newline at end of file
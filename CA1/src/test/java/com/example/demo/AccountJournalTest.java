@@ -0,0 +1,166 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AccountJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void balances_survive_a_restart() throws IOException {
+        AccountJournal journal = new AccountJournal(dir, 1 << 16, 1_000_000);
+        AccountService accounts = open(journal);
+        accounts.deposit("a", 100);
+        accounts.deposit("b", 5);
+        accounts.withdraw("a", 30);
+        accounts.withdraw("b", 50);
+        journal.sync();
+
+        AccountService recovered = open(new AccountJournal(dir, 1 << 16, 1_000_000));
+
+        assertThat(recovered.getBalance("a")).isEqualTo(70);
+        assertThat(recovered.getBalance("b")).isEqualTo(5);
+        assertThat(recovered.getBalance("c")).isEqualTo(-1);
+    }
+
+    @Test
+    void recovery_replays_the_tail_after_the_latest_snapshot() throws IOException {
+        AccountJournal journal = new AccountJournal(dir, 1 << 12, 1_000_000);
+        AccountService accounts = open(journal);
+        for (int i = 0; i < 1000; i++)
+            accounts.deposit(String.valueOf(i % 10), 1);
+        journal.snapshot();
+        for (int i = 0; i < 500; i++)
+            accounts.deposit(String.valueOf(i % 10), 1);
+        journal.sync();
+
+        AccountService recovered = open(new AccountJournal(dir, 1 << 12, 1_000_000));
+
+        for (int i = 0; i < 10; i++)
+            assertThat(recovered.getBalance(String.valueOf(i))).isEqualTo(150);
+        try (Stream<Path> files = Files.list(dir)) {
+            assertThat(files.filter(p -> p.toString().endsWith(".snap"))).hasSize(1);
+        }
+    }
+
+    @Test
+    void a_torn_record_ends_the_replay() throws IOException {
+        AccountJournal journal = new AccountJournal(dir, 1 << 16, 1_000_000);
+        AccountService accounts = open(journal);
+        accounts.deposit("a", 100);
+        accounts.deposit("a", 1);
+        journal.sync();
+        Path segment;
+        try (Stream<Path> files = Files.list(dir)) {
+            segment = files.filter(p -> p.toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        try (FileChannel file = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            // Corrupt the balance of the second record; the first one is 4 + 19 + 1 + 4 bytes.
+            file.write(ByteBuffer.wrap(new byte[]{0x7F}), 36 + 4 + 1 + 8);
+        }
+
+        AccountService recovered = open(new AccountJournal(dir, 1 << 16, 1_000_000));
+
+        assertThat(recovered.getBalance("a")).isEqualTo(100);
+    }
+
+    @Test
+    void a_transfer_replays_whole_or_not_at_all() throws IOException {
+        AccountJournal journal = new AccountJournal(dir, 1 << 16, 1_000_000);
+        AccountService accounts = open(journal);
+        accounts.deposit("a", 100);
+        accounts.deposit("b", 0);
+        accounts.transfer("a", "b", 40, 7);
+        journal.sync();
+        assertThat(open(new AccountJournal(dir, 1 << 16, 1_000_000)).getBalance("b")).isEqualTo(40);
+
+        Path segment;
+        try (Stream<Path> files = Files.list(dir)) {
+            segment = files.filter(p -> p.toString().endsWith(".log")).sorted().findFirst().orElseThrow();
+        }
+        try (FileChannel file = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            // Corrupt the last record of the transfer group: two deposits and one group record before it.
+            file.write(ByteBuffer.wrap(new byte[]{0x7F}), 3 * 36 + 4 + 1 + 8);
+        }
+
+        AccountService recovered = open(new AccountJournal(dir, 1 << 16, 1_000_000));
+
+        assertThat(recovered.getBalance("a")).isEqualTo(100);
+        assertThat(recovered.getBalance("b")).isEqualTo(0);
+    }
+
+    @Test
+    void replies_wait_for_the_flush() throws IOException, InterruptedException {
+        AccountJournal journal = new AccountJournal(dir, 1 << 16, 1_000_000);
+        AccountService accounts = open(journal);
+        List<CompletableFuture<Void>> replies = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++) {
+            accounts.deposit("a", 1);
+            replies.add(journal.whenDurable());
+        }
+
+        CompletableFuture.allOf(replies.toArray(new CompletableFuture<?>[0])).orTimeout(10, TimeUnit.SECONDS).join();
+        journal.close();
+        assertThat(open(new AccountJournal(dir, 1 << 16, 1_000_000)).getBalance("a")).isEqualTo(100);
+    }
+
+    @Test
+    void a_slow_snapshot_does_not_hold_up_replies() throws Exception {
+        CountDownLatch snapshotting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AccountJournal journal = new AccountJournal(dir, 1 << 16, 10);
+        AccountService accounts = new AccountService(journal) {
+            @Override
+            void forEachBalance(ObjLongConsumer<String> visitor) {
+                snapshotting.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.forEachBalance(visitor);
+            }
+        };
+        accounts.recover();
+
+        for (int i = 0; i < 10; i++)
+            accounts.deposit("a", 1);
+        assertThat(snapshotting.await(10, TimeUnit.SECONDS)).isTrue();
+        accounts.deposit("a", 1);
+        journal.whenDurable().get(10, TimeUnit.SECONDS);
+
+        release.countDown();
+        journal.close();
+        assertThat(open(new AccountJournal(dir, 1 << 16, 10)).getBalance("a")).isEqualTo(11);
+    }
+
+    @Test
+    void disabled_journal_replies_at_once() {
+        assertThat(AccountJournal.disabled().whenDurable()).isDone();
+    }
+
+    private static AccountService open(AccountJournal journal) throws IOException {
+        AccountService accounts = new AccountService(journal);
+        accounts.recover();
+        return accounts;
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AccountServiceTest {
+
+    private static final int ACCOUNTS = 16;
+    private static final int OPERATIONS_PER_THREAD = 20_000;
+
+    @Test
+    void withdraw_reports_unknown_account_and_insufficient_funds() {
+        AccountService accountService = new AccountService();
+
+        assertThat(accountService.withdraw("1", 10)).isEqualTo(2);
+        assertThat(accountService.getBalance("1")).isEqualTo(-1);
+
+        accountService.deposit("1", 50);
+        assertThat(accountService.withdraw("1", 80)).isEqualTo(1);
+        assertThat(accountService.withdraw("1", 30)).isEqualTo(0);
+        assertThat(accountService.getBalance("1")).isEqualTo(20);
+    }
+
+    @Test
+    void a_failed_operation_rolls_back_the_whole_unit() {
+        AccountService accountService = new AccountService();
+        accountService.deposit("1", 100);
+        accountService.deposit("2", 0);
+
+        AccountService.Outcome outcome = accountService.apply(List.of(
+                new AccountService.Operation(CommandMetrics.TRANSFER, "1", "2", 60),
+                new AccountService.Operation(CommandMetrics.BALANCE, "2", null, 0),
+                new AccountService.Operation(CommandMetrics.WITHDRAW, "1", null, 50)), AccountJournal.BATCH, 0);
+
+        assertThat(outcome.failedAt()).isEqualTo(2);
+        assertThat(outcome.results()).containsExactly(0, 60, 1);
+        assertThat(accountService.getBalance("1")).isEqualTo(100);
+        assertThat(accountService.getBalance("2")).isEqualTo(0);
+        assertThat(accountService.transfer("1", "3", 10, 0)).isEqualTo(2);
+        assertThat(accountService.transfer("1", "2", 100, 0)).isEqualTo(0);
+        assertThat(accountService.getBalance("2")).isEqualTo(100);
+    }
+
+    // Opposite transfers lock the same stripes; ordered locking keeps them from deadlocking.
+    @ParameterizedTest
+    @ValueSource(ints = {2, 8})
+    void concurrent_transfers_conserve_money_without_deadlock(int consumers) throws Exception {
+        AccountService accountService = new AccountService(4);
+        for (int account = 0; account < ACCOUNTS; account++) {
+            accountService.deposit(String.valueOf(account), 1_000);
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(consumers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int consumer = 0; consumer < consumers; consumer++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                        String from = String.valueOf(random.nextInt(ACCOUNTS));
+                        String to = String.valueOf(random.nextInt(ACCOUNTS));
+                        accountService.transfer(from, to, 1 + random.nextInt(100), 0);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long total = 0;
+        for (int account = 0; account < ACCOUNTS; account++) {
+            long balance = accountService.getBalance(String.valueOf(account));
+            assertThat(balance).isGreaterThanOrEqualTo(0);
+            total += balance;
+        }
+        assertThat(total).isEqualTo(ACCOUNTS * 1_000L);
+    }
+
+    @Test
+    void visiting_every_balance_never_sees_half_a_transfer() throws Exception {
+        AccountService accountService = new AccountService(ACCOUNTS);
+        for (int account = 0; account < ACCOUNTS; account++) {
+            accountService.deposit(String.valueOf(account), 1_000);
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch done = new CountDownLatch(1);
+            Future<?> transfers = executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (done.getCount() > 0) {
+                    String from = String.valueOf(random.nextInt(ACCOUNTS));
+                    String to = String.valueOf(random.nextInt(ACCOUNTS));
+                    accountService.transfer(from, to, 1 + random.nextInt(100), 0);
+                }
+                return null;
+            });
+            for (int visit = 0; visit < 2_000; visit++) {
+                AtomicLong total = new AtomicLong();
+                accountService.forEachBalance((account, balance) -> total.addAndGet(balance));
+                assertThat(total.get()).isEqualTo(ACCOUNTS * 1_000L);
+            }
+            done.countDown();
+            transfers.get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Same shape as raising sender.consumers: many consumers hitting a few hot accounts.
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 4, 8, 16, 32})
+    void concurrent_deposits_and_withdrawals_lose_no_updates_and_never_overdraw(int consumers) throws Exception {
+        AccountService accountService = new AccountService(4);
+        for (int account = 0; account < ACCOUNTS; account++) {
+            accountService.deposit(String.valueOf(account), 0);
+        }
+
+        AtomicLong deposited = new AtomicLong();
+        AtomicLong withdrawn = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(consumers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int consumer = 0; consumer < consumers; consumer++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                        String account = String.valueOf(random.nextInt(ACCOUNTS));
+                        int amount = 1 + random.nextInt(100);
+                        if (random.nextBoolean()) {
+                            accountService.deposit(account, amount);
+                            deposited.addAndGet(amount);
+                        } else if (accountService.withdraw(account, amount) == 0) {
+                            withdrawn.addAndGet(amount);
+                        }
+                        assertThat(accountService.getBalance(account)).isGreaterThanOrEqualTo(0);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long total = 0;
+        for (int account = 0; account < ACCOUNTS; account++) {
+            total += accountService.getBalance(String.valueOf(account));
+        }
+        assertThat(total).isEqualTo(deposited.get() - withdrawn.get());
+    }
+
+}
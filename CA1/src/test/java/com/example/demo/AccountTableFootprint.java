@@ -0,0 +1,70 @@
+package com.example.demo;
+
+import java.lang.ref.Reference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares heap use and update throughput of the former {@code HashMap<String, Integer>}
+ * account storage against {@link AccountTable}. Not a test; run after
+ * {@code mvn test-compile} with
+ * {@code java -Xmx8g -cp target/classes:target/test-classes com.example.demo.AccountTableFootprint [accounts]}.
+ * Account numbers are built fresh for every operation, as the parser does for each message.
+ */
+public class AccountTableFootprint {
+
+    public static void main(String[] args) {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+
+        long baseline = usedHeap();
+        Map<String, Integer> map = new HashMap<>();
+        for (int i = 0; i < accounts; i++)
+            map.merge(String.valueOf(i), 100, Integer::sum);
+        long mapBytes = usedHeap() - baseline;
+
+        baseline = usedHeap();
+        AccountTable table = new AccountTable();
+        for (int i = 0; i < accounts; i++)
+            table.add(String.valueOf(i), 100);
+        long tableBytes = usedHeap() - baseline;
+
+        long mapNanos = 0;
+        long tableNanos = 0;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < accounts; i++) {
+                String account = String.valueOf(scramble(i, accounts));
+                map.merge(account, 1, Integer::sum);
+                map.get(account);
+            }
+            mapNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < accounts; i++) {
+                String account = String.valueOf(scramble(i, accounts));
+                table.add(account, 1);
+                table.get(account);
+            }
+            tableNanos = System.nanoTime() - start;
+        }
+
+        System.out.printf("accounts:       %d%n", accounts);
+        System.out.printf("HashMap:        %.1f bytes/account, %.2f M ops/s%n", (double) mapBytes / accounts, 2e3 * accounts / mapNanos);
+        System.out.printf("AccountTable:   %.1f bytes/account, %.2f M ops/s%n", (double) tableBytes / accounts, 2e3 * accounts / tableNanos);
+        // Keep both structures reachable until after the measurements
+        Reference.reachabilityFence(map);
+        Reference.reachabilityFence(table);
+    }
+
+    // Visits every account once in an order that defeats the caches.
+    private static long scramble(int i, int accounts) {
+        return (i * 2_654_435_761L) % accounts;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AccountTableTest {
+
+    @Test
+    void numeric_and_other_account_numbers_never_collide() {
+        AccountTable table = new AccountTable();
+
+        table.add("7", 1);
+        table.add("07", 2);
+        table.add("-7", 3);
+        table.add("abc", 4);
+        table.add("1234567890123456789", 5);
+
+        assertThat(table.get("7")).isEqualTo(1);
+        assertThat(table.get("07")).isEqualTo(2);
+        assertThat(table.get("-7")).isEqualTo(3);
+        assertThat(table.get("abc")).isEqualTo(4);
+        assertThat(table.get("1234567890123456789")).isEqualTo(5);
+        assertThat(table.get("8")).isEqualTo(AccountTable.MISSING);
+        assertThat(table.size()).isEqualTo(5);
+    }
+
+    @Test
+    void agrees_with_a_hash_map_while_growing() {
+        AccountTable table = new AccountTable();
+        Map<String, Long> expected = new HashMap<>();
+        Random random = new Random(19);
+
+        for (int i = 0; i < 200_000; i++) {
+            String account = String.valueOf(random.nextInt(50_000));
+            long amount = random.nextInt(1000);
+            if (i % 7 == 0) {
+                table.put(account, amount);
+                expected.put(account, amount);
+            } else {
+                assertThat(table.add(account, amount)).isEqualTo(expected.merge(account, amount, Long::sum));
+            }
+        }
+
+        Map<String, Long> visited = new HashMap<>();
+        table.forEach(visited::put);
+        assertThat(visited).isEqualTo(expected);
+        assertThat(table.size()).isEqualTo(expected.size());
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveListenerTest {
+
+    private static final long MS = 1_000_000;
+
+    private final AdaptiveListener listener = new AdaptiveListener(1, 4, 1 << 16, 1 << 20, 10, 1000, 20, 50);
+
+    @Test
+    void a_growing_backlog_adds_consumers_and_prefetch_up_to_the_bounds() {
+        for (int i = 0; i < 10; i++)
+            assertThat(listener.decide(50_000, 100, MS, MS)).isEqualTo(AdaptiveListener.Decision.SCALE_UP);
+
+        assertThat(listener.getConsumers()).isEqualTo(4);
+        assertThat(listener.getWindow()).isEqualTo(1 << 20);
+        assertThat(listener.decide(2_000, 0, MS, MS)).isEqualTo(AdaptiveListener.Decision.HOLD);
+    }
+
+    @Test
+    void slow_service_or_publish_backs_off_even_with_a_backlog() {
+        listener.decide(50_000, 0, MS, MS);
+        listener.decide(50_000, 0, MS, MS);
+
+        assertThat(listener.decide(50_000, 0, 30 * MS, MS)).isEqualTo(AdaptiveListener.Decision.BACK_OFF);
+        assertThat(listener.getConsumers()).isEqualTo(2);
+        assertThat(listener.decide(50_000, 0, MS, 80 * MS)).isEqualTo(AdaptiveListener.Decision.BACK_OFF);
+        assertThat(listener.getConsumers()).isEqualTo(1);
+        assertThat(listener.getWindow()).isEqualTo(1 << 16);
+    }
+
+    @Test
+    void quiet_traffic_shrinks_back_to_the_minimum() {
+        for (int i = 0; i < 3; i++)
+            listener.decide(50_000, 0, MS, MS);
+
+        for (int i = 0; i < 5; i++)
+            listener.decide(-1, 0, 0, 0);
+
+        assertThat(listener.getConsumers()).isEqualTo(1);
+        assertThat(listener.getWindow()).isEqualTo(1 << 16);
+        assertThat(listener.snapshot()).containsEntry("lastDecision", AdaptiveListener.Decision.SCALE_DOWN)
+                .containsEntry("inqDepth", -1L);
+    }
+}
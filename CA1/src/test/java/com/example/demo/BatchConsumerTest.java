@@ -0,0 +1,121 @@
+package com.example.demo;
+
+import jakarta.jms.Destination;
+import jakarta.jms.JMSException;
+import jakarta.jms.MessageConsumer;
+import jakarta.jms.MessageProducer;
+import jakarta.jms.Session;
+import jakarta.jms.TextMessage;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BatchConsumerTest {
+
+    private final AccountService accountService = new AccountService();
+    private final AccountJournal journal = AccountJournal.disabled();
+    private final Session session = mock(Session.class);
+    private final MessageConsumer consumer = mock(MessageConsumer.class);
+    private final MessageProducer producer = mock(MessageProducer.class);
+    private final MessageProducer replyToProducer = mock(MessageProducer.class);
+
+    @Test
+    void replies_are_sent_in_order_and_committed_once() throws JMSException {
+        BatchConsumer batch = new BatchConsumer(new CommandProcessor(accountService), new CommandLanes(4), journal, 3, 50);
+        TextMessage first = text("DEPOSIT 1 100");
+        TextMessage second = text("WITHDRAW 1 30");
+        TextMessage third = text("BALANCE 1");
+        when(consumer.receive(anyLong())).thenReturn(first, second, third);
+        when(session.createTextMessage(anyString())).thenAnswer(inv -> text(inv.getArgument(0)));
+
+        assertThat(batch.processBatch(session, consumer, producer, replyToProducer)).isEqualTo(3);
+
+        InOrder order = inOrder(session, producer);
+        order.verify(session).createTextMessage("0 Deposit successful");
+        order.verify(session).createTextMessage("0 Withdraw successful");
+        order.verify(session).createTextMessage("0 Balance:70");
+        order.verify(session).commit();
+        verify(session, never()).rollback();
+    }
+
+    @Test
+    void replies_go_to_the_reply_to_destination_when_one_is_set() throws JMSException {
+        BatchConsumer batch = new BatchConsumer(new CommandProcessor(accountService), new CommandLanes(0), journal, 2, 0);
+        TextMessage own = text("DEPOSIT 1 100");
+        TextMessage shared = text("BALANCE 1");
+        Destination clientQueue = mock(Destination.class);
+        when(own.getJMSReplyTo()).thenReturn(clientQueue);
+        when(consumer.receive(anyLong())).thenReturn(own);
+        when(consumer.receiveNoWait()).thenReturn(shared, (jakarta.jms.Message) null);
+        TextMessage ownReply = text("0 Deposit successful");
+        TextMessage sharedReply = text("0 Balance:100");
+        when(session.createTextMessage("0 Deposit successful")).thenReturn(ownReply);
+        when(session.createTextMessage("0 Balance:100")).thenReturn(sharedReply);
+
+        assertThat(batch.processBatch(session, consumer, producer, replyToProducer)).isEqualTo(2);
+
+        verify(replyToProducer).send(clientQueue, ownReply);
+        verify(producer).send(sharedReply);
+        verify(session).commit();
+    }
+
+    @Test
+    void a_failed_send_rolls_the_batch_back() throws JMSException {
+        BatchConsumer batch = new BatchConsumer(new CommandProcessor(accountService), new CommandLanes(0), journal, 10, 0);
+        TextMessage deposit = text("DEPOSIT 1 100");
+        when(consumer.receive(anyLong())).thenReturn(deposit);
+        when(session.createTextMessage(anyString())).thenThrow(new JMSException("broker gone"));
+
+        try {
+            batch.processBatch(session, consumer, producer, replyToProducer);
+        } catch (JMSException expected) {
+        }
+
+        verify(session).rollback();
+        verify(session, never()).commit();
+    }
+
+    @Test
+    void a_rolled_back_batch_is_not_applied_again_when_redelivered() throws JMSException {
+        CommandProcessor processor = new CommandProcessor(accountService, new DedupCache(16, 60_000));
+        BatchConsumer batch = new BatchConsumer(processor, new CommandLanes(0), journal, 10, 0);
+        TextMessage deposit = text("DEPOSIT 1 100");
+        when(deposit.getJMSMessageID()).thenReturn("ID:42");
+        when(consumer.receive(anyLong())).thenReturn(deposit);
+        when(session.createTextMessage(anyString())).thenThrow(new JMSException("broker gone")).thenReturn(deposit);
+
+        try {
+            batch.processBatch(session, consumer, producer, replyToProducer);
+        } catch (JMSException expected) {
+        }
+        batch.processBatch(session, consumer, producer, replyToProducer);
+
+        verify(session).rollback();
+        verify(session).commit();
+        verify(session, times(2)).createTextMessage("0 Deposit successful");
+        assertThat(accountService.getBalance("1")).isEqualTo(100);
+    }
+
+    @Test
+    void an_idle_queue_yields_an_empty_batch() throws JMSException {
+        BatchConsumer batch = new BatchConsumer(new CommandProcessor(accountService), new CommandLanes(0), journal, 10, 0);
+
+        assertThat(batch.processBatch(session, consumer, producer, replyToProducer)).isZero();
+        verify(session, never()).commit();
+    }
+
+    private static TextMessage text(String body) throws JMSException {
+        TextMessage message = mock(TextMessage.class);
+        when(message.getText()).thenReturn(body);
+        return message;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.demo;
+
+import jakarta.jms.Connection;
+import jakarta.jms.ConnectionFactory;
+import jakarta.jms.QueueBrowser;
+import jakarta.jms.Session;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CommandClientTest {
+
+    private static ConfigurableApplicationContext context;
+    private static Connection connection;
+
+    @BeforeAll
+    static void startBroker() throws Exception {
+        context = new SpringApplicationBuilder(Application.class).run(
+                "--spring.artemis.mode=embedded",
+                "--spring.artemis.embedded.persistent=false",
+                "--spring.artemis.embedded.queues=INQ,OUTQ",
+                "--spring.main.web-application-type=none",
+                "--sender.log.sample-every=0");
+        connection = context.getBean(ConnectionFactory.class).createConnection();
+    }
+
+    @AfterAll
+    static void stopBroker() throws Exception {
+        connection.close();
+        context.close();
+    }
+
+    @Test
+    void pipelined_requests_get_their_own_replies_off_outq() throws Exception {
+        try (CommandClient client = new CommandClient(connection)) {
+            client.send("DEPOSIT pipelined 1000").get(10, TimeUnit.SECONDS);
+
+            List<CompletableFuture<String>> replies = new ArrayList<>();
+            for (int i = 0; i < 200; i++)
+                replies.add(client.send(i % 2 == 0 ? "WITHDRAW pipelined 1" : "BALANCE pipelined"));
+            CompletableFuture.allOf(replies.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+            // One account's commands keep their order, so each BALANCE sees the withdrawals before it.
+            for (int i = 1; i < replies.size(); i += 2)
+                assertThat(replies.get(i).join()).isEqualTo("0 Balance:" + (1000 - (i + 1) / 2));
+            assertThat(client.getOutstanding()).isZero();
+        }
+        assertThat(outqDepth()).isZero();
+    }
+
+    @Test
+    void one_accounts_commands_keep_their_order_across_several_consumers() throws Exception {
+        Sender sender = context.getBean(Sender.class);
+        sender.setConsumers(4);
+        try (CommandClient client = new CommandClient(connection)) {
+            client.send("DEPOSIT grouped 1000").get(10, TimeUnit.SECONDS);
+
+            List<CompletableFuture<String>> replies = new ArrayList<>();
+            for (int i = 0; i < 200; i++)
+                replies.add(client.send(i % 2 == 0 ? "WITHDRAW grouped 1" : "BALANCE grouped"));
+            CompletableFuture.allOf(replies.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+            // JMSXGroupID sends every command for the account to the same consumer.
+            for (int i = 1; i < replies.size(); i += 2)
+                assertThat(replies.get(i).join()).isEqualTo("0 Balance:" + (1000 - (i + 1) / 2));
+        } finally {
+            sender.setConsumers(1);
+        }
+    }
+
+    @Test
+    void binary_requests_and_request_ids_work_over_the_reply_queue() throws Exception {
+        try (CommandClient client = new CommandClient(connection)) {
+            byte[] deposit = BinaryProtocol.encodeRequest(BinaryProtocol.DEPOSIT, "binary", 50);
+
+            client.send(deposit, 7).get(10, TimeUnit.SECONDS);
+            client.send(deposit, 7).get(10, TimeUnit.SECONDS);
+            byte[] balance = client.send(BinaryProtocol.encodeRequest(BinaryProtocol.BALANCE, "binary", 0))
+                    .get(10, TimeUnit.SECONDS);
+
+            assertThat(BinaryProtocol.replyValue(balance)).isEqualTo(50);
+        }
+    }
+
+    @Test
+    void closing_fails_what_is_still_outstanding() throws Exception {
+        CommandClient client = new CommandClient(connection);
+        client.close();
+
+        assertThatThrownBy(() -> client.send("BALANCE closed").get(10, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    private static int outqDepth() throws Exception {
+        try (Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+             QueueBrowser browser = session.createBrowser(session.createQueue("OUTQ"))) {
+            Enumeration<?> messages = browser.getEnumeration();
+            int depth = 0;
+            for (; messages.hasMoreElements(); messages.nextElement())
+                depth++;
+            return depth;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CommandLanesTest {
+
+    @Test
+    void commands_for_one_account_run_in_submission_order() throws InterruptedException {
+        CommandLanes lanes = new CommandLanes(4);
+        Map<String, List<Integer>> executed = new ConcurrentHashMap<>();
+
+        for (int i = 0; i < 10_000; i++) {
+            String account = String.valueOf(i % 37);
+            int sequence = i;
+            lanes.submit(account, () ->
+                    executed.computeIfAbsent(account, k -> Collections.synchronizedList(new ArrayList<>())).add(sequence));
+        }
+        lanes.shutdown();
+
+        assertThat(executed).hasSize(37);
+        assertThat(executed.values().stream().mapToInt(List::size).sum()).isEqualTo(10_000);
+        for (List<Integer> sequences : executed.values()) {
+            assertThat(sequences).isSorted();
+        }
+    }
+
+    @Test
+    void a_command_for_several_accounts_runs_in_order_on_each_of_their_lanes() throws Exception {
+        CommandLanes lanes = new CommandLanes(4, 8);
+        Map<String, List<Integer>> executed = new ConcurrentHashMap<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 10_000; i++) {
+            List<String> accounts = i % 3 == 0
+                    ? List.of(String.valueOf(i % 16), String.valueOf(i * 7 % 16), String.valueOf(i * 5 % 16))
+                    : List.of(String.valueOf(i % 16));
+            int sequence = i;
+            futures.add(lanes.submit(accounts, () -> {
+                for (String account : new HashSet<>(accounts))
+                    executed.computeIfAbsent(account, k -> Collections.synchronizedList(new ArrayList<>())).add(sequence);
+                return null;
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(60, TimeUnit.SECONDS);
+        lanes.shutdown();
+
+        assertThat(executed).hasSize(16);
+        for (List<Integer> sequences : executed.values()) {
+            assertThat(sequences).isSorted();
+        }
+    }
+
+    @Test
+    void a_full_lane_blocks_the_caller_until_there_is_room() throws InterruptedException {
+        CommandLanes lanes = new CommandLanes(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        lanes.submit("1", () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+        lanes.submit("1", () -> null);
+        Thread caller = new Thread(() -> lanes.submit("1", () -> null));
+        caller.start();
+
+        for (int i = 0; i < 500 && caller.getState() != Thread.State.WAITING; i++)
+            Thread.sleep(10);
+        assertThat(caller.getState()).isEqualTo(Thread.State.WAITING);
+        assertThat(lanes.getBacklog()).isEqualTo(1);
+
+        release.countDown();
+        caller.join(5000);
+        assertThat(caller.isAlive()).isFalse();
+        lanes.shutdown();
+    }
+
+    @Test
+    void zero_lanes_runs_on_the_calling_thread() {
+        CommandLanes lanes = new CommandLanes(0);
+        Thread[] ranOn = new Thread[1];
+
+        lanes.submit("1", () -> ranOn[0] = Thread.currentThread());
+
+        assertThat(ranOn[0]).isSameAs(Thread.currentThread());
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CommandProcessorTest {
+
+    private final CommandProcessor processor = new CommandProcessor(new AccountService());
+
+    @Test
+    void text_commands_keep_their_replies() {
+        assertThat(processor.execute("BALANCE 7")).isEqualTo("2 Unknown account number");
+        assertThat(processor.execute("WITHDRAW 7 10")).isEqualTo("2 Unknown account number");
+        assertThat(processor.execute("DEPOSIT 7 100")).isEqualTo("0 Deposit successful");
+        assertThat(processor.execute("WITHDRAW 7 30")).isEqualTo("0 Withdraw successful");
+        assertThat(processor.execute("WITHDRAW 7 500")).isEqualTo("1 Insufficient funds");
+        assertThat(processor.execute("BALANCE 7")).isEqualTo("0 Balance:70");
+        assertThat(processor.execute("TRANSFERS 7 8 1")).isEqualTo("3 Unknown command");
+        assertThat(processor.execute("DEPOSITS 7 1")).isEqualTo("3 Unknown command");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"DEPOSIT", "DEPOSIT 7", "DEPOSIT 7 ", "DEPOSIT 7 12x", "DEPOSIT 7 -", "DEPOSIT 7 1234567890123456789", "BALANCE", "BALANCE ",
+            "TRANSFER 7 8", "TRANSFER 7 8 -5", "TRANSFER 7 8 5 9", "BATCH", "BATCH ", "BATCH DEPOSIT 7 1;",
+            "BATCH DEPOSIT 7 1;BATCH DEPOSIT 7 1", "BATCH DEPOSIT 7 1;FOO 7 1"})
+    void malformed_text_commands_are_rejected(String command) {
+        assertThat(processor.execute(command)).isEqualTo("4 Malformed command");
+    }
+
+    @Test
+    void binary_commands_mirror_the_text_ones() {
+        byte[] deposit = BinaryProtocol.encodeRequest(BinaryProtocol.DEPOSIT, "acc-1", 100);
+        byte[] withdraw = BinaryProtocol.encodeRequest(BinaryProtocol.WITHDRAW, "acc-1", 30);
+        byte[] balance = BinaryProtocol.encodeRequest(BinaryProtocol.BALANCE, "acc-1", 0);
+
+        assertThat(BinaryProtocol.replyStatus(processor.execute(balance))).isEqualTo(CommandProcessor.STATUS_UNKNOWN_ACCOUNT);
+        assertThat(BinaryProtocol.replyStatus(processor.execute(deposit))).isEqualTo(CommandProcessor.STATUS_OK);
+        assertThat(BinaryProtocol.replyStatus(processor.execute(withdraw))).isEqualTo(CommandProcessor.STATUS_OK);
+        byte[] reply = processor.execute(balance);
+        assertThat(BinaryProtocol.replyStatus(reply)).isEqualTo(CommandProcessor.STATUS_OK);
+        assertThat(BinaryProtocol.replyValue(reply)).isEqualTo(70);
+        assertThat(processor.execute("BALANCE acc-1")).isEqualTo("0 Balance:70");
+    }
+
+    @Test
+    void balances_go_past_the_int_range() {
+        byte[] large = BinaryProtocol.encodeRequest(BinaryProtocol.DEPOSIT, "9", 1L << 40);
+
+        processor.execute(large);
+        processor.execute(large);
+
+        assertThat(processor.execute("BALANCE 9")).isEqualTo("0 Balance:" + (1L << 41));
+        assertThat(BinaryProtocol.replyValue(processor.execute(BinaryProtocol.encodeRequest(BinaryProtocol.BALANCE, "9", 0))))
+                .isEqualTo(1L << 41);
+    }
+
+    @Test
+    void transfer_moves_money_between_existing_accounts() {
+        processor.execute("DEPOSIT 1 100");
+        processor.execute("DEPOSIT 2 0");
+
+        assertThat(processor.execute("TRANSFER 1 2 30")).isEqualTo("0 Transfer successful");
+        assertThat(processor.execute("TRANSFER 1 2 300")).isEqualTo("1 Insufficient funds");
+        assertThat(processor.execute("TRANSFER 1 3 1")).isEqualTo("2 Unknown account number");
+        assertThat(processor.execute("BALANCE 2")).isEqualTo("0 Balance:30");
+        assertThat(CommandProcessor.accountsOf("TRANSFER 1 2 30")).containsExactly("1", "2");
+    }
+
+    @Test
+    void batch_applies_all_commands_or_none() {
+        assertThat(processor.execute("BATCH DEPOSIT 1 100;TRANSFER 1 2 10;BALANCE 1"))
+                .isEqualTo("2 Batch failed at command 2;0 Deposit successful;2 Unknown account number");
+        assertThat(processor.execute("BALANCE 1")).isEqualTo("2 Unknown account number");
+
+        assertThat(processor.execute("BATCH DEPOSIT 1 100;DEPOSIT 2 0;TRANSFER 1 2 10;BALANCE 1"))
+                .isEqualTo("0 Batch successful;0 Deposit successful;0 Deposit successful;0 Transfer successful;0 Balance:90");
+        assertThat(processor.execute("BALANCE 2")).isEqualTo("0 Balance:10");
+        assertThat(CommandProcessor.accountsOf("BATCH DEPOSIT 1 100;TRANSFER 2 3 5")).containsExactly("1", "2", "3");
+        assertThat(CommandProcessor.commandOf("BATCH DEPOSIT 1 100")).isEqualTo(CommandMetrics.BATCH);
+    }
+
+    @Test
+    void a_repeated_batch_is_applied_once() {
+        CommandProcessor deduplicating = new CommandProcessor(new AccountService(), new DedupCache(16, 60_000));
+
+        String reply = deduplicating.execute("BATCH DEPOSIT 1 5;DEPOSIT 1 5;BALANCE 1", 42);
+        assertThat(reply).isEqualTo("0 Batch successful;0 Deposit successful;0 Deposit successful;0 Balance:10");
+        assertThat(deduplicating.execute("BATCH DEPOSIT 1 5;DEPOSIT 1 5;BALANCE 1", 42)).isEqualTo(reply);
+        assertThat(deduplicating.execute("BALANCE 1")).isEqualTo("0 Balance:10");
+
+        byte[] batch = BinaryProtocol.encodeBatch(List.of(
+                BinaryProtocol.encodeRequest(BinaryProtocol.DEPOSIT, "1", 5),
+                BinaryProtocol.encodeRequest(BinaryProtocol.BALANCE, "1", 0)));
+        byte[] binaryReply = deduplicating.execute(batch, 43);
+        assertThat(BinaryProtocol.replyValue(BinaryProtocol.subReply(binaryReply, 1))).isEqualTo(15);
+        assertThat(deduplicating.execute(batch, 43)).isEqualTo(binaryReply);
+        assertThat(deduplicating.execute("BALANCE 1")).isEqualTo("0 Balance:15");
+    }
+
+    @Test
+    void binary_transfer_and_batch_mirror_the_text_ones() {
+        processor.execute("DEPOSIT 1 100");
+        processor.execute("DEPOSIT 2 0");
+
+        byte[] transfer = BinaryProtocol.encodeTransfer("1", "2", 30);
+        assertThat(BinaryProtocol.replyStatus(processor.execute(transfer))).isEqualTo(CommandProcessor.STATUS_OK);
+        assertThat(BinaryProtocol.accountsOf(transfer)).containsExactly("1", "2");
+
+        byte[] batch = BinaryProtocol.encodeBatch(List.of(
+                BinaryProtocol.encodeTransfer("2", "1", 10),
+                BinaryProtocol.encodeRequest(BinaryProtocol.BALANCE, "2", 0)));
+        assertThat(BinaryProtocol.accountsOf(batch)).containsExactly("2", "1", "2");
+        byte[] reply = processor.execute(batch);
+        assertThat(BinaryProtocol.replyStatus(reply)).isEqualTo(CommandProcessor.STATUS_OK);
+        assertThat(BinaryProtocol.replyValue(reply)).isEqualTo(2);
+        assertThat(BinaryProtocol.replyValue(BinaryProtocol.subReply(reply, 1))).isEqualTo(20);
+
+        byte[] failing = BinaryProtocol.encodeBatch(List.of(
+                BinaryProtocol.encodeRequest(BinaryProtocol.DEPOSIT, "2", 5),
+                BinaryProtocol.encodeRequest(BinaryProtocol.WITHDRAW, "2", 500)));
+        reply = processor.execute(failing);
+        assertThat(BinaryProtocol.replyStatus(reply)).isEqualTo(CommandProcessor.STATUS_INSUFFICIENT_FUNDS);
+        assertThat(BinaryProtocol.replyValue(reply)).isEqualTo(2);
+        assertThat(processor.execute("BALANCE 2")).isEqualTo("0 Balance:20");
+
+        byte[] nested = BinaryProtocol.encodeBatch(List.of(batch));
+        assertThat(BinaryProtocol.replyStatus(processor.execute(nested))).isEqualTo(CommandProcessor.STATUS_MALFORMED);
+    }
+
+    @Test
+    void malformed_binary_commands_are_rejected() {
+        byte[] truncated = {BinaryProtocol.DEPOSIT, 5, 'a'};
+        byte[] unknown = BinaryProtocol.encodeRequest((byte) 9, "acc-1", 1);
+
+        assertThat(BinaryProtocol.replyStatus(processor.execute(truncated))).isEqualTo(CommandProcessor.STATUS_MALFORMED);
+        assertThat(BinaryProtocol.replyStatus(processor.execute(unknown))).isEqualTo(CommandProcessor.STATUS_UNKNOWN_COMMAND);
+        assertThat(BinaryProtocol.accountsOf(truncated)).containsExactly("");
+    }
+}
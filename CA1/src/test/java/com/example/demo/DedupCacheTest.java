@@ -0,0 +1,158 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DedupCacheTest {
+
+    // Payload fingerprint for tests that only exercise the ring.
+    private static final long F = DedupCache.fingerprintOf(CommandMetrics.DEPOSIT, "1", null, 100);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void the_oldest_ids_make_way_for_new_ones() {
+        DedupCache cache = new DedupCache(1000, 60_000);
+
+        for (long id = 1; id <= 5000; id++)
+            cache.put(id, CommandMetrics.DEPOSIT, F, id);
+
+        assertThat(cache.size()).isEqualTo(1000);
+        assertThat(cache.get(4000, CommandMetrics.DEPOSIT, F)).isEqualTo(DedupCache.MISSING);
+        for (long id = 4001; id <= 5000; id++)
+            assertThat(cache.get(id, CommandMetrics.DEPOSIT, F)).isEqualTo(id);
+    }
+
+    @Test
+    void expired_ids_are_forgotten() throws InterruptedException {
+        DedupCache cache = new DedupCache(1000, 20);
+        cache.put(1, CommandMetrics.WITHDRAW, F, 1);
+
+        Thread.sleep(50);
+
+        assertThat(cache.get(1, CommandMetrics.WITHDRAW, F)).isEqualTo(DedupCache.MISSING);
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void recording_an_id_again_keeps_its_age() throws InterruptedException {
+        DedupCache cache = new DedupCache(1000, 200);
+        cache.put(1, CommandMetrics.DEPOSIT, F, 0);
+        Thread.sleep(120);
+        cache.put(2, CommandMetrics.DEPOSIT, F, 0);
+        cache.put(1, CommandMetrics.DEPOSIT, F, 0);
+
+        Thread.sleep(120);
+
+        assertThat(cache.get(1, CommandMetrics.DEPOSIT, F)).isEqualTo(DedupCache.MISSING);
+        assertThat(cache.get(2, CommandMetrics.DEPOSIT, F)).isZero();
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void an_id_reused_for_another_command_or_payload_is_rejected() {
+        DedupCache cache = new DedupCache(10, 60_000);
+        cache.put(7, CommandMetrics.BALANCE, F, 500);
+
+        assertThat(cache.get(7, CommandMetrics.DEPOSIT, F)).isEqualTo(DedupCache.REUSED);
+        assertThat(cache.get(7, CommandMetrics.BALANCE, F + 1)).isEqualTo(DedupCache.REUSED);
+        assertThat(cache.getBatch(7, F)).isSameAs(DedupCache.REUSED_BATCH);
+        assertThat(cache.get(7, CommandMetrics.BALANCE, F)).isEqualTo(500);
+    }
+
+    @Test
+    void a_resent_id_with_a_different_payload_is_not_applied() {
+        AccountService accounts = new AccountService();
+        CommandProcessor processor = new CommandProcessor(accounts, new DedupCache(100, 60_000));
+        processor.execute("DEPOSIT 1 100", 31);
+
+        assertThat(processor.execute("DEPOSIT 1 500", 31)).isEqualTo("5 Request id reused for another command");
+        assertThat(processor.execute("DEPOSIT 2 100", 31)).isEqualTo("5 Request id reused for another command");
+        assertThat(processor.execute("BATCH DEPOSIT 1 100", 31)).isEqualTo("5 Request id reused for another command");
+        byte[] binary = BinaryProtocol.encodeRequest(BinaryProtocol.DEPOSIT, "1", 500);
+        assertThat(BinaryProtocol.replyStatus(processor.execute(binary, 31)))
+                .isEqualTo(CommandProcessor.STATUS_REQUEST_ID_REUSED);
+        assertThat(processor.execute("DEPOSIT 1 100", 31)).isEqualTo("0 Deposit successful");
+        assertThat(accounts.getBalance("1")).isEqualTo(100);
+        assertThat(accounts.getBalance("2")).isEqualTo(-1);
+    }
+
+    @Test
+    void a_large_cache_keeps_ids_across_its_stripes() throws IOException {
+        DedupCache cache = new DedupCache(65536, 60_000);
+        for (long id = 1; id <= 10_000; id++)
+            cache.put(id, CommandMetrics.DEPOSIT, F, id);
+        cache.write(dir.resolve("dedup.bin"));
+
+        DedupCache restored = new DedupCache(65536, 60_000);
+        restored.read(dir.resolve("dedup.bin"));
+
+        assertThat(restored.size()).isEqualTo(10_000);
+        for (long id = 1; id <= 10_000; id++)
+            assertThat(restored.get(id, CommandMetrics.DEPOSIT, F)).isEqualTo(id);
+    }
+
+    @Test
+    void entries_survive_a_write_and_read() throws IOException {
+        DedupCache cache = new DedupCache(100, 60_000);
+        for (long id = 1; id <= 150; id++)
+            cache.put(id * 31, CommandMetrics.DEPOSIT, F, 0);
+        cache.putBatch(7, F, new long[] {0, 250});
+        cache.write(dir.resolve("dedup.bin"));
+
+        DedupCache restored = new DedupCache(100, 60_000);
+        restored.read(dir.resolve("dedup.bin"));
+
+        assertThat(restored.size()).isEqualTo(100);
+        assertThat(restored.get(150 * 31, CommandMetrics.DEPOSIT, F)).isZero();
+        assertThat(restored.get(51 * 31, CommandMetrics.DEPOSIT, F)).isEqualTo(DedupCache.MISSING);
+        assertThat(restored.getBatch(7, F)).containsExactly(0, 250);
+    }
+
+    @Test
+    void repeated_requests_are_applied_once() {
+        AccountService accounts = new AccountService();
+        CommandProcessor processor = new CommandProcessor(accounts, new DedupCache(100, 60_000));
+
+        processor.execute("DEPOSIT 1 100", 11);
+        processor.execute("DEPOSIT 1 100", 11);
+        assertThat(processor.execute("WITHDRAW 1 70", 12)).isEqualTo("0 Withdraw successful");
+        assertThat(processor.execute("WITHDRAW 1 70", 12)).isEqualTo("0 Withdraw successful");
+        byte[] binaryRetry = BinaryProtocol.encodeRequest(BinaryProtocol.WITHDRAW, "1", 70);
+
+        assertThat(BinaryProtocol.replyStatus(processor.execute(binaryRetry, 12))).isEqualTo(CommandProcessor.STATUS_OK);
+        assertThat(accounts.getBalance("1")).isEqualTo(30);
+        assertThat(processor.execute("WITHDRAW 1 70")).isEqualTo("1 Insufficient funds");
+    }
+
+    @Test
+    void journal_recovery_remembers_applied_requests() throws IOException {
+        DedupCache cache = new DedupCache(100, 60_000);
+        AccountJournal journal = new AccountJournal(dir, 1 << 16, 1_000_000, cache);
+        AccountService accounts = new AccountService(journal);
+        accounts.recover();
+        new CommandProcessor(accounts, cache).execute("DEPOSIT 1 100", 21);
+        journal.snapshot();
+        new CommandProcessor(accounts, cache).execute("DEPOSIT 1 100", 22);
+        String batchReply = new CommandProcessor(accounts, cache).execute("BATCH DEPOSIT 1 1;BALANCE 1", 23);
+        journal.sync();
+
+        DedupCache recoveredCache = new DedupCache(100, 60_000);
+        AccountService recovered = new AccountService(new AccountJournal(dir, 1 << 16, 1_000_000, recoveredCache));
+        recovered.recover();
+        CommandProcessor processor = new CommandProcessor(recovered, recoveredCache);
+        processor.execute("DEPOSIT 1 100", 21);
+        processor.execute("DEPOSIT 1 100", 22);
+
+        assertThat(processor.execute("BATCH DEPOSIT 1 1;BALANCE 1", 23)).isEqualTo(batchReply);
+        assertThat(processor.execute("DEPOSIT 1 7", 22)).isEqualTo("5 Request id reused for another command");
+        assertThat(processor.execute("BATCH DEPOSIT 1 2;BALANCE 1", 23)).isEqualTo("5 Request id reused for another command");
+        assertThat(recovered.getBalance("1")).isEqualTo(201);
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class LatencyHistogramTest {
+
+    @Test
+    void quantiles_are_within_the_bucket_precision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 1_000_000; nanos++)
+            histogram.record(nanos * 1000);
+
+        assertThat(histogram.getCount()).isEqualTo(1_000_000);
+        assertThat((double) histogram.getValueAtQuantile(0.5)).isCloseTo(500_000_000, within(500_000_000 * 0.035));
+        assertThat((double) histogram.getValueAtQuantile(0.99)).isCloseTo(990_000_000, within(990_000_000 * 0.035));
+        assertThat(histogram.getValueAtQuantile(1.0)).isEqualTo(1_000_000_000);
+        assertThat(histogram.getMax()).isEqualTo(1_000_000_000);
+    }
+
+    @Test
+    void every_value_maps_to_a_bucket_that_contains_it() {
+        for (long value : new long[]{0, 1, 63, 64, 65, 127, 128, 1_000_003, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.indexOf(value);
+            assertThat(LatencyHistogram.highestValueOf(index)).isGreaterThanOrEqualTo(value);
+            if (index > 0)
+                assertThat(LatencyHistogram.highestValueOf(index - 1)).isLessThan(value);
+        }
+    }
+
+    @Test
+    void command_metrics_report_each_stage() {
+        CommandMetrics metrics = new CommandMetrics();
+        metrics.record(CommandMetrics.DEPOSIT, CommandMetrics.SERVICE, 2_000);
+        metrics.record(CommandMetrics.DEPOSIT, CommandMetrics.PUBLISH, 40_000);
+        metrics.replied(CommandMetrics.DEPOSIT, System.nanoTime() - 50_000, "0 Deposit successful");
+
+        Map<?, ?> deposit = (Map<?, ?>) ((Map<?, ?>) metrics.snapshot().get("commands")).get("DEPOSIT");
+
+        assertThat(deposit.get("count")).isEqualTo(1L);
+        assertThat(((Map<?, ?>) deposit.get("service")).get("p50")).isEqualTo(2.0);
+        assertThat(((Map<?, ?>) deposit.get("publish")).get("max")).isEqualTo(40.0);
+        assertThat((double) ((Map<?, ?>) deposit.get("dequeueToReply")).get("p99")).isGreaterThanOrEqualTo(50.0);
+    }
+}
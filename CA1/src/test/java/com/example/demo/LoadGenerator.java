@@ -0,0 +1,188 @@
+package com.example.demo;
+
+import jakarta.jms.Connection;
+import jakarta.jms.ConnectionFactory;
+import jakarta.jms.DeliveryMode;
+import jakarta.jms.JMSException;
+import jakarta.jms.MessageConsumer;
+import jakarta.jms.MessageProducer;
+import jakarta.jms.Session;
+import jakarta.jms.TextMessage;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end benchmark: boots {@link Application} against an in-process Artemis broker,
+ * sends an open-loop DEPOSIT/WITHDRAW/BALANCE mix to INQ at a fixed rate, matches OUTQ
+ * replies by correlation id and reports throughput, latency percentiles and any
+ * command answered more than once. Each message carries its account as
+ * {@code JMSXGroupID}, like {@link CommandClient}'s do. Latency is
+ * measured from each message's scheduled send time, so a stalled service shows up in
+ * the percentiles instead of silently slowing the sender down.
+ * <p>
+ * Not a test; run after {@code mvn test-compile} with
+ * {@code java -cp target/classes:target/test-classes:$(cat cp.txt) com.example.demo.LoadGenerator
+ * [--rate=20000] [--seconds=20] [--warmup=5] [--accounts=100000] [--deposit=40] [--withdraw=40]
+ * [--property=value ...]}, where {@code cp.txt} comes from
+ * {@code mvn dependency:build-classpath -Dmdep.outputFile=cp.txt}. The remaining
+ * percentage of the mix is BALANCE; unrecognised {@code --options} are passed on to the
+ * application, e.g. {@code --sender.lanes=4} or {@code --sender.batch.enabled=true}.
+ */
+public class LoadGenerator {
+
+    record Profile(int rate, int seconds, int warmupSeconds, int accounts, int depositPercent, int withdrawPercent) {
+    }
+
+    // received counts measured commands answered at least once, duplicates the extra replies
+    // to any command; forces and recordsForced count the journal's fsyncs during the run,
+    // both 0 without a journal.
+    record Result(long sent, long received, long duplicates, double perSecond, LatencyHistogram latency,
+                  long forces, long recordsForced) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rate = 20_000;
+        int seconds = 20;
+        int warmup = 5;
+        int accounts = 100_000;
+        int deposit = 40;
+        int withdraw = 40;
+        List<String> appArgs = new ArrayList<>();
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--rate="))
+                rate = Integer.parseInt(value);
+            else if (arg.startsWith("--seconds="))
+                seconds = Integer.parseInt(value);
+            else if (arg.startsWith("--warmup="))
+                warmup = Integer.parseInt(value);
+            else if (arg.startsWith("--accounts="))
+                accounts = Integer.parseInt(value);
+            else if (arg.startsWith("--deposit="))
+                deposit = Integer.parseInt(value);
+            else if (arg.startsWith("--withdraw="))
+                withdraw = Integer.parseInt(value);
+            else
+                appArgs.add(arg);
+        }
+
+        Profile profile = new Profile(rate, seconds, warmup, accounts, deposit, withdraw);
+        Result result = run(profile, appArgs.toArray(new String[0]));
+
+        LatencyHistogram latency = result.latency();
+        System.out.printf("profile:     %s%n", profile);
+        System.out.printf("sent:        %d, replies: %d, duplicates: %d%n", result.sent(), result.received(),
+                result.duplicates());
+        System.out.printf("throughput:  %.0f replies/s%n", result.perSecond());
+        System.out.printf("latency us:  p50 %.1f, p99 %.1f, p999 %.1f, max %.1f%n",
+                latency.getValueAtQuantile(0.5) / 1e3, latency.getValueAtQuantile(0.99) / 1e3,
+                latency.getValueAtQuantile(0.999) / 1e3, latency.getMax() / 1e3);
+        if (result.forces() > 0)
+            System.out.printf("journal:     %d records in %d fsyncs, %.1f per fsync%n", result.recordsForced(),
+                    result.forces(), (double) result.recordsForced() / result.forces());
+    }
+
+    static Result run(Profile profile, String... appArgs) throws Exception {
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.artemis.mode=embedded",
+                "--spring.artemis.embedded.persistent=false",
+                "--spring.artemis.embedded.queues=INQ,OUTQ",
+                "--spring.main.web-application-type=none",
+                "--sender.log.sample-every=0"));
+        args.addAll(List.of(appArgs));
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .run(args.toArray(new String[0]))) {
+            AccountService accountService = context.getBean(AccountService.class);
+            for (int account = 0; account < profile.accounts(); account++)
+                accountService.deposit(String.valueOf(account), 1_000_000_000);
+
+            try (Connection connection = context.getBean(ConnectionFactory.class).createConnection()) {
+                return drive(connection, profile, context.getBean(AccountJournal.class));
+            }
+        }
+    }
+
+    private static Result drive(Connection connection, Profile profile, AccountJournal journal)
+            throws JMSException, InterruptedException {
+        journal.sync();
+        long forcesBefore = journal.getForces();
+        long forcedBefore = journal.getRecordsForced();
+        int warmupCount = profile.rate() * profile.warmupSeconds();
+        int total = warmupCount + profile.rate() * profile.seconds();
+        long interval = 1_000_000_000L / profile.rate();
+        long[] scheduledAt = new long[total];
+        LatencyHistogram latency = new LatencyHistogram();
+        CountDownLatch outstanding = new CountDownLatch(total);
+        AtomicIntegerArray replyCounts = new AtomicIntegerArray(total);
+        AtomicLong measuredReplies = new AtomicLong();
+        AtomicLong duplicates = new AtomicLong();
+        AtomicLong lastReplyAt = new AtomicLong();
+
+        Session replySession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer replies = replySession.createConsumer(replySession.createQueue("OUTQ"));
+        replies.setMessageListener(reply -> {
+            long now = System.nanoTime();
+            try {
+                int i = Integer.parseInt(reply.getJMSCorrelationID());
+                if (replyCounts.getAndIncrement(i) > 0) {
+                    duplicates.incrementAndGet();
+                    return;
+                }
+                if (i >= warmupCount) {
+                    latency.record(now - scheduledAt[i]);
+                    measuredReplies.incrementAndGet();
+                    lastReplyAt.accumulateAndGet(now, Math::max);
+                }
+            } catch (JMSException | NumberFormatException e) {
+                return;
+            }
+            outstanding.countDown();
+        });
+
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(session.createQueue("INQ"));
+        producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        producer.setDisableMessageTimestamp(true);
+        connection.start();
+
+        SplittableRandom random = new SplittableRandom(21);
+        long start = System.nanoTime();
+        long measureStart = start + warmupCount * interval;
+        for (int i = 0; i < total; i++) {
+            long scheduled = start + i * interval;
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0)
+                LockSupport.parkNanos(wait);
+            scheduledAt[i] = scheduled;
+
+            int account = random.nextInt(profile.accounts());
+            int pick = random.nextInt(100);
+            String command = pick < profile.depositPercent() ? "DEPOSIT " + account + " 10"
+                    : pick < profile.depositPercent() + profile.withdrawPercent() ? "WITHDRAW " + account + " 10"
+                    : "BALANCE " + account;
+            TextMessage message = session.createTextMessage(command);
+            message.setJMSCorrelationID(Integer.toString(i));
+            message.setStringProperty("JMSXGroupID", Integer.toString(account));
+            producer.send(message);
+        }
+        outstanding.await(30, TimeUnit.SECONDS);
+        // A duplicate would trail the first reply to its command; give it time to show up.
+        Thread.sleep(200);
+        replies.close();
+
+        long received = measuredReplies.get();
+        double perSecond = received == 0 ? 0 : received / ((lastReplyAt.get() - measureStart) / 1e9);
+        return new Result(total - warmupCount, received, duplicates.get(), perSecond, latency,
+                journal.getForces() - forcesBefore, journal.getRecordsForced() - forcedBefore);
+    }
+}
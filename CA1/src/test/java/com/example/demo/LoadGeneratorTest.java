@@ -0,0 +1,31 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoadGeneratorTest {
+
+    @Test
+    void every_command_gets_a_correlated_reply_through_the_broker() throws Exception {
+        LoadGenerator.Result result = LoadGenerator.run(new LoadGenerator.Profile(1000, 2, 1, 100, 40, 40));
+
+        assertThat(result.sent()).isEqualTo(2000);
+        assertThat(result.received()).isEqualTo(result.sent());
+        assertThat(result.duplicates()).isZero();
+        assertThat(result.latency().getCount()).isEqualTo(result.sent());
+    }
+
+    @Test
+    void adaptive_resizing_answers_every_command_exactly_once() throws Exception {
+        LoadGenerator.Result result = LoadGenerator.run(new LoadGenerator.Profile(500, 3, 1, 100, 40, 40),
+                "--sender.adaptive.enabled=true", "--sender.adaptive.interval-ms=200",
+                "--sender.adaptive.backlog-high=1",
+                "--sender.adaptive.min-window-bytes=32768", "--sender.adaptive.max-window-bytes=65536",
+                "--sender.adaptive.window-cooldown-ms=0");
+
+        // Consumers resize and reconnect without handing back any command they received.
+        assertThat(result.received()).isEqualTo(result.sent());
+        assertThat(result.duplicates()).isZero();
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.demo;
+
+import jakarta.jms.JMSException;
+import jakarta.jms.MessageConsumer;
+import jakarta.jms.TextMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import org.springframework.jms.core.JmsTemplate;
+
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SenderTest {
+
+    private final AccountService accountService = new AccountService();
+    private final MessageConsumer consumer = mock(MessageConsumer.class);
+    private final ArrayDeque<Sender.InFlight> inFlight = new ArrayDeque<>();
+
+    @Test
+    void commands_for_two_accounts_run_at_the_same_time() throws Exception {
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        // Each command waits until the other one has started too.
+        Sender sender = sender(new CommandProcessor(accountService) {
+            @Override
+            public String execute(String message, long requestId) {
+                bothRunning.countDown();
+                await(bothRunning);
+                return super.execute(message, requestId);
+            }
+        });
+        TextMessage first = text("DEPOSIT 1 100");
+        TextMessage second = text("DEPOSIT 2 100");
+        when(consumer.receive(anyLong())).thenReturn(first, second, (jakarta.jms.Message) null);
+
+        assertThat(sender.pump(consumer, inFlight)).isTrue();
+        assertThat(sender.pump(consumer, inFlight)).isTrue();
+        assertThat(bothRunning.await(10, TimeUnit.SECONDS)).isTrue();
+        drain(sender);
+
+        verify(first).acknowledge();
+        verify(second).acknowledge();
+        assertThat(accountService.getBalance("1")).isEqualTo(100);
+        assertThat(accountService.getBalance("2")).isEqualTo(100);
+    }
+
+    @Test
+    void a_command_is_acknowledged_only_after_the_ones_received_before_it() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch secondDone = new CountDownLatch(1);
+        Sender sender = sender(new CommandProcessor(accountService) {
+            @Override
+            public String execute(String message, long requestId) {
+                if (message.endsWith(" 1 100"))
+                    await(release);
+                String reply = super.execute(message, requestId);
+                if (message.endsWith(" 2 100"))
+                    secondDone.countDown();
+                return reply;
+            }
+        });
+        TextMessage first = text("DEPOSIT 1 100");
+        TextMessage second = text("DEPOSIT 2 100");
+        when(consumer.receive(anyLong())).thenReturn(first, second, (jakarta.jms.Message) null);
+
+        sender.pump(consumer, inFlight);
+        sender.pump(consumer, inFlight);
+        assertThat(secondDone.await(10, TimeUnit.SECONDS)).isTrue();
+        sender.pump(consumer, inFlight);
+        verify(second, never()).acknowledge();
+
+        release.countDown();
+        drain(sender);
+        InOrder order = inOrder(first, second);
+        order.verify(first).acknowledge();
+        order.verify(second).acknowledge();
+    }
+
+    @Test
+    void commands_journaled_while_a_flush_runs_share_the_next_one(@TempDir Path dir) throws Exception {
+        CountDownLatch forcing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // Holds the first fsync back until every later command has been journaled.
+        AccountJournal journal = new AccountJournal(dir, 1 << 16, 1_000_000) {
+            @Override
+            void force(MappedByteBuffer buffer, int from, int length) {
+                forcing.countDown();
+                await(release);
+                super.force(buffer, from, length);
+            }
+        };
+        AccountService accounts = new AccountService(journal);
+        accounts.recover();
+        Sender sender = new Sender(new CommandProcessor(accounts), mock(JmsTemplate.class), new CommandLanes(4),
+                journal, 16);
+        TextMessage[] deposits = new TextMessage[11];
+        for (int i = 0; i < deposits.length; i++)
+            deposits[i] = text("DEPOSIT " + i + " 100");
+        when(consumer.receive(anyLong())).thenReturn(deposits[0], deposits[1], deposits[2], deposits[3],
+                deposits[4], deposits[5], deposits[6], deposits[7], deposits[8], deposits[9], deposits[10],
+                (jakarta.jms.Message) null);
+        long forcesBefore = journal.getForces();
+        long forcedBefore = journal.getRecordsForced();
+
+        sender.pump(consumer, inFlight);
+        assertThat(forcing.await(10, TimeUnit.SECONDS)).isTrue();
+        for (int i = 1; i < deposits.length; i++)
+            sender.pump(consumer, inFlight);
+        for (int i = 0; i < deposits.length; i++)
+            awaitBalance(accounts, String.valueOf(i), 100);
+        release.countDown();
+        drain(sender);
+
+        assertThat(journal.getForces() - forcesBefore).isEqualTo(2);
+        assertThat(journal.getRecordsForced() - forcedBefore).isEqualTo(11);
+        for (TextMessage deposit : deposits)
+            verify(deposit).acknowledge();
+        journal.close();
+    }
+
+    @Test
+    void a_failed_command_is_not_acknowledged() throws Exception {
+        Sender sender = sender(new CommandProcessor(accountService) {
+            @Override
+            public String execute(String message, long requestId) {
+                throw new IllegalStateException("disk full");
+            }
+        });
+        TextMessage deposit = text("DEPOSIT 1 100");
+        when(consumer.receive(anyLong())).thenReturn(deposit, (jakarta.jms.Message) null);
+
+        assertThatThrownBy(() -> drain(sender)).isInstanceOf(CompletionException.class);
+        verify(deposit, never()).acknowledge();
+    }
+
+    private static Sender sender(CommandProcessor processor) {
+        return new Sender(processor, mock(JmsTemplate.class), new CommandLanes(4), AccountJournal.disabled(), 16);
+    }
+
+    private void drain(Sender sender) throws JMSException {
+        do {
+            sender.pump(consumer, inFlight);
+        } while (!inFlight.isEmpty());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // The lanes apply commands without waiting for the journal, so a held-back fsync must not stop them.
+    private static void awaitBalance(AccountService accounts, String accountNo, long balance) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (accounts.getBalance(accountNo) != balance && System.nanoTime() < deadline)
+            Thread.sleep(1);
+        assertThat(accounts.getBalance(accountNo)).isEqualTo(balance);
+    }
+
+    private static TextMessage text(String body) throws JMSException {
+        TextMessage message = mock(TextMessage.class);
+        when(message.getText()).thenReturn(body);
+        return message;
+    }
+}